@@ -1,14 +1,21 @@
 package com.hmdp.config;
 
+import com.hmdp.utils.AdminInterceptor;
 import com.hmdp.utils.LoginInterceptor;
+import com.hmdp.utils.RateLimitInterceptor;
+import com.hmdp.utils.RateLimiter;
+import com.hmdp.utils.RedisCircuitBreaker;
 import com.hmdp.utils.RefreshTokenInterceptor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.util.Set;
+
 /**
  * @Author:SpongeBOb
  * @Date:2022/12/30
@@ -19,6 +26,12 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 public class MvcConfig implements WebMvcConfigurer {
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisCircuitBreaker redisCircuitBreaker;
+    @Autowired
+    private RateLimiter rateLimiter;
+    @Value("${hmdp.admin.user-ids:}")
+    private Set<Long> adminUserIds;
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
         //登录拦截器
@@ -32,7 +45,15 @@ public class MvcConfig implements WebMvcConfigurer {
                         "/user/code",
                         "/user/login"
                 ).order(1);
+        //限流拦截器，在识别用户之后执行
+        registry.addInterceptor(new RateLimitInterceptor(rateLimiter)).addPathPatterns("/**").order(2);
+        //管理员拦截器，保护运维接口和会修改缓存的接口
+        registry.addInterceptor(new AdminInterceptor(adminUserIds))
+                .addPathPatterns(
+                        "/admin/**",
+                        "/cache/warm-up"
+                ).order(3);
         //token刷新拦截器
-        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate)).addPathPatterns("/**").order(0);
+        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate, redisCircuitBreaker)).addPathPatterns("/**").order(0);
     }
 }
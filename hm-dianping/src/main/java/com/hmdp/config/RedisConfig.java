@@ -1,10 +1,18 @@
 package com.hmdp.config;
 
+import com.hmdp.utils.BinaryCacheCodec;
+import com.hmdp.utils.CacheCodec;
+import com.hmdp.utils.JsonCacheCodec;
 import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
 import org.redisson.config.Config;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
 /**
  * @Author:SpongeBOb
@@ -23,4 +31,30 @@ public class RedisConfig {
         //创建客户端
         return Redisson.create(config);
     }
+
+    //redis发布订阅的监听容器，用于跨节点通知
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+
+    //缓存专用的RedisTemplate，value直接读写字节，由CacheCodec负责序列化
+    @Bean
+    public RedisTemplate<String, byte[]> cacheRedisTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate<String, byte[]> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(RedisSerializer.string());
+        template.setValueSerializer(RedisSerializer.byteArray());
+        template.setHashKeySerializer(RedisSerializer.string());
+        template.setHashValueSerializer(RedisSerializer.byteArray());
+        return template;
+    }
+
+    //缓存序列化方式，json与原有格式兼容，binary体积更小、解析更快
+    @Bean
+    public CacheCodec cacheCodec(@Value("${hmdp.cache.codec:json}") String codec) {
+        return "binary".equalsIgnoreCase(codec) ? new BinaryCacheCodec() : new JsonCacheCodec();
+    }
 }
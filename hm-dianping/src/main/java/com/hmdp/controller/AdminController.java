@@ -0,0 +1,45 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.KeyspaceReporter;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * redis运维查询
+ * </p>
+ *
+ * @author SpongeBOb
+ * @since 2026-10-17
+ */
+@RestController
+@RequestMapping("/admin")
+public class AdminController {
+
+    @Resource
+    private KeyspaceReporter keyspaceReporter;
+
+    /**
+     * 查询最近一次键空间统计结果
+     * @return 按key前缀分组的数量、估算内存、p99大小和有效期分布
+     */
+    @GetMapping("/keyspace")
+    public Result keyspace() {
+        return Result.ok(keyspaceReporter.report());
+    }
+
+    /**
+     * 立即执行一次键空间统计
+     * @return 是否成功开始，已有统计在执行时返回失败
+     */
+    @PostMapping("/keyspace")
+    public Result refreshKeyspace() {
+        return keyspaceReporter.runAsync() ? Result.ok() : Result.fail("统计正在执行中！");
+    }
+}
@@ -0,0 +1,156 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.AdaptiveTtlPolicy;
+import com.hmdp.utils.AsyncCacheClient;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheInvalidator;
+import com.hmdp.utils.CacheMetrics;
+import com.hmdp.utils.DbBulkhead;
+import com.hmdp.utils.RedisCircuitBreaker;
+import com.hmdp.utils.RebuildScheduler;
+import com.hmdp.utils.ShopCacheWarmer;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+import java.util.Map;
+
+/**
+ * <p>
+ * 缓存运行状态查询
+ * </p>
+ *
+ * @author SpongeBOb
+ * @since 2026-10-17
+ */
+@RestController
+@RequestMapping("/cache")
+public class CacheController {
+
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private AsyncCacheClient asyncCacheClient;
+    @Resource
+    private AdaptiveTtlPolicy adaptiveTtlPolicy;
+    @Resource
+    private CacheMetrics cacheMetrics;
+    @Resource
+    private RebuildScheduler rebuildScheduler;
+    @Resource
+    private CacheInvalidator cacheInvalidator;
+    @Resource
+    private DbBulkhead dbBulkhead;
+    @Resource
+    private RedisCircuitBreaker redisCircuitBreaker;
+    @Resource
+    private ShopCacheWarmer shopCacheWarmer;
+    @Resource
+    private ApplicationAvailability applicationAvailability;
+
+    /**
+     * 查询各布隆过滤器的误判率与内存占用
+     * @return 按key前缀分组的统计数据
+     */
+    @GetMapping("/bloom")
+    public Result bloomFilterStats() {
+        return Result.ok(cacheClient.bloomFilterStats());
+    }
+
+    /**
+     * 查询缓存命中、回源、重建次数及耗时分布
+     * @return 按 key前缀|策略|事件 展开的指标
+     */
+    @GetMapping("/metrics")
+    public Result metrics() {
+        return Result.ok(cacheMetrics.snapshot());
+    }
+
+    /**
+     * 查询重建调度器的队列深度、合并与拒绝次数及任务耗时
+     * @return 调度器统计数据
+     */
+    @GetMapping("/rebuild")
+    public Result rebuildStats() {
+        return Result.ok(rebuildScheduler.stats());
+    }
+
+    /**
+     * 查询异步缓存客户端回源线程池的线程数、队列深度和拒绝次数
+     * @return 回源线程池统计数据
+     */
+    @GetMapping("/async")
+    public Result asyncStats() {
+        return Result.ok(asyncCacheClient.stats());
+    }
+
+    /**
+     * 查询自适应有效期各等级的写入次数，命中率变化见/cache/metrics
+     * @return 各等级写入次数
+     */
+    @GetMapping("/ttl")
+    public Result ttlStats() {
+        return Result.ok(adaptiveTtlPolicy.stats());
+    }
+
+    /**
+     * 查询缓存删除、失败重试及放弃的次数
+     * @return 失效组件统计数据
+     */
+    @GetMapping("/invalidate")
+    public Result invalidateStats() {
+        return Result.ok(cacheInvalidator.stats());
+    }
+
+    /**
+     * 查询当前滑动窗口内的热点key
+     * @return 按估算访问次数从高到低排列的热点key
+     */
+    @GetMapping("/hot-keys")
+    public Result hotKeys() {
+        return Result.ok(cacheClient.hotKeys());
+    }
+
+    /**
+     * 查询各key前缀回源数据库的并发数和被拒绝次数
+     * @return 按key前缀分组的舱壁统计
+     */
+    @GetMapping("/bulkhead")
+    public Result bulkheadStats() {
+        return Result.ok(dbBulkhead.stats());
+    }
+
+    /**
+     * 查询redis熔断状态及最近10秒的调用、失败和慢调用次数
+     * @return 熔断器统计数据
+     */
+    @GetMapping("/breaker")
+    public Result breakerStats() {
+        return Result.ok(redisCircuitBreaker.stats());
+    }
+
+    /**
+     * 手动触发店铺缓存预热
+     * @return 是否成功开始，已有预热在执行时返回失败
+     */
+    @PostMapping("/warm-up")
+    public Result warmUp() {
+        return shopCacheWarmer.warmUpAsync() ? Result.ok() : Result.fail("预热正在执行中！");
+    }
+
+    /**
+     * 查询预热进度及应用是否就绪
+     * @return 预热进度
+     */
+    @GetMapping("/warm-up")
+    public Result warmUpProgress() {
+        Map<String, Object> progress = shopCacheWarmer.progress();
+        progress.put("readiness", applicationAvailability.getReadinessState());
+        return Result.ok(progress);
+    }
+}
@@ -1,11 +1,9 @@
 package com.hmdp.controller;
 
 
-import cn.hutool.core.bean.BeanUtil;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
-import com.hmdp.entity.User;
 import com.hmdp.entity.UserInfo;
 import com.hmdp.service.IUserInfoService;
 import com.hmdp.service.IUserService;
@@ -86,11 +84,10 @@ public class UserController {
     }
     @GetMapping("/{id}")
     public Result queryUserById(@PathVariable("id") Long userId){
-        User user = userService.getById(userId);
-        if (user==null) {
+        UserDTO userDTO = userService.queryUserById(userId);
+        if (userDTO==null) {
             return Result.ok();
         }
-        UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
         return Result.ok(userDTO);
     }
     //用户签到
@@ -3,6 +3,7 @@ package com.hmdp.controller;
 
 import com.hmdp.dto.Result;
 import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.RateLimit;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -23,6 +24,9 @@ import javax.annotation.Resource;
 public class VoucherOrderController {
     @Resource
     private IVoucherOrderService iVoucherOrderService;
+    //每张优惠券全局每秒1000个请求；不区分优惠券，单节点每秒500个，同一用户每秒最多2次
+    @RateLimit(name = "seckill", key = "id", permitsPerSecond = 1000, capacity = 2000,
+            userLimit = 2, userWindowMs = 1000, localPermitsPerSecond = 500)
     @PostMapping("seckill/{id}")
     public Result seckillVoucher(@PathVariable("id") Long voucherId) {
         return iVoucherOrderService.seckillVoucher(voucherId);
@@ -15,18 +15,26 @@ import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.service.IFollowService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.AsyncCacheClient;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.Cached;
+import com.hmdp.utils.CacheInvalidator;
+import com.hmdp.utils.RedisCircuitBreaker;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
-import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
-import static com.hmdp.utils.RedisConstants.FEED_KEY;
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
@@ -36,6 +44,7 @@ import static com.hmdp.utils.RedisConstants.FEED_KEY;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IBlogService {
     @Resource
@@ -44,21 +53,61 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     private StringRedisTemplate stringRedisTemplate;
     @Resource
     private IFollowService iFollowService;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private AsyncCacheClient asyncCacheClient;
+    @Resource
+    private CacheInvalidator cacheInvalidator;
+    @Resource
+    private RedisCircuitBreaker redisCircuitBreaker;
+    //通过代理调用本类方法，使@Cached生效
+    @Lazy
+    @Resource
+    private IBlogService self;
 
     @Override
     public Result queryBlogById(Long id) {
         //查询blog
-        Blog blog = getById(id);
+        Blog blog = self.queryBlog(id);
         if (blog == null) {
             return Result.fail("博客不存在！");
         }
-        //查询blog有关的用户
-        queryBlogUser(blog);
-        //查询blog是否被点赞了
-        isBlogLiked(blog);
+        //缓存中的对象可能被共享，复制后再填充用户信息
+        blog = BeanUtil.copyProperties(blog, Blog.class);
+        //作者和点赞状态互不依赖，同时发出查询
+        //1.查询blog有关的用户，与@Cached使用同一个缓存key
+        CompletableFuture<UserDTO> author = asyncCacheClient.queryWithPassThrough(
+                CACHE_USER_KEY, blog.getUserId(), UserDTO.class, this::loadUser, CACHE_USER_TTL, TimeUnit.MINUTES);
+        //2.查询blog是否被点赞了，登录用户需要在请求线程中获取
+        UserDTO user = UserHolder.getUser();
+        CompletableFuture<Double> liked = user == null
+                ? CompletableFuture.completedFuture(null)
+                : asyncCacheClient.score(BLOG_LIKED_KEY + blog.getId(), user.getId().toString());
+        //3.等待两个查询完成
+        AsyncCacheClient.join(CompletableFuture.allOf(author, liked));
+        UserDTO blogUser = author.join();
+        if (blogUser != null) {
+            blog.setName(blogUser.getNickName());
+            blog.setIcon(blogUser.getIcon());
+        }
+        if (user != null) {
+            blog.setIsLike(liked.join() != null);
+        }
         return Result.ok(blog);
     }
 
+    private UserDTO loadUser(Long userId) {
+        User user = userService.getById(userId);
+        return user == null ? null : BeanUtil.copyProperties(user, UserDTO.class);
+    }
+
+    @Override
+    @Cached(prefix = CACHE_BLOG_KEY, key = "#id", ttl = CACHE_BLOG_TTL)
+    public Blog queryBlog(Long id) {
+        return getById(id);
+    }
+
     private void isBlogLiked(Blog blog) {
         //1.获取当前登录用户
         UserDTO user = UserHolder.getUser();
@@ -90,26 +139,32 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
 
     @Override
     public Result likeBlog(Long id) {
+        //redis熔断时点赞属于非关键写入，直接跳过
+        if (!redisCircuitBreaker.allowRequest()) {
+            return Result.fail("点赞功能暂时不可用，请稍后再试");
+        }
         //1.获取当前登录用户
         Long userId = UserHolder.getUser().getId();
         //2.判断是否点赞
         String key = BLOG_LIKED_KEY + id;
-        Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());
+        Double score = redisCircuitBreaker.call(() -> stringRedisTemplate.opsForZSet().score(key, userId.toString()));
         if (score == null) {
             //3.未点赞
             //3.1修改数据库
             boolean isSuccess = update().setSql("liked = liked +1").eq("id", id).update();
-            //3.2将用户点赞信息保存到redis的set集合
+            //3.2将用户点赞信息保存到redis的set集合，点赞数变化后删除blog缓存
             if (isSuccess) {
                 stringRedisTemplate.opsForZSet().add(key, userId.toString(), System.currentTimeMillis());
+                cacheInvalidator.invalidate(CACHE_BLOG_KEY + id);
             }
         } else {
             //4.已点赞
             //4.1修改数据库
             boolean isSuccess = update().setSql("liked = liked -1").eq("id", id).update();
-            //4.2移除redis的set集合的信息
+            //4.2移除redis的set集合的信息，点赞数变化后删除blog缓存
             if (isSuccess) {
                 stringRedisTemplate.opsForZSet().remove(key, userId.toString());
+                cacheInvalidator.invalidate(CACHE_BLOG_KEY + id);
             }
         }
         return null;
@@ -118,7 +173,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     @Override
     public Result queryBlogLikes(Long id) {
         String key = BLOG_LIKED_KEY + id;
-        Set<String> top5 = stringRedisTemplate.opsForZSet().range(key, 0, 4);
+        //热门笔记的点赞排行在本地短暂缓存，避免单个key压垮redis
+        Set<String> top5 = cacheClient.queryHotKey(key, () -> stringRedisTemplate.opsForZSet().range(key, 0, 4));
         if (top5 == null || top5.isEmpty()) {
             return Result.ok(Collections.emptyList());
         }
@@ -144,6 +200,11 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         if (!isSuccess) {
             return Result.fail("新增笔记失败！");
         }
+        //redis熔断时跳过推送，笔记已保存，粉丝可以在作者主页看到
+        if (!redisCircuitBreaker.allowRequest()) {
+            log.warn("redis熔断，跳过笔记推送，blogId={}", blog.getId());
+            return Result.ok(blog.getId());
+        }
         //查询笔记作者的所有粉丝
         List<Follow> followUserId = iFollowService.query().eq("follow_user_id", user.getId()).list();
         for (Follow follow : followUserId) {
@@ -151,7 +212,7 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
             Long userId = follow.getUserId();
             //推送
             String key = FEED_KEY + userId;
-            stringRedisTemplate.opsForZSet().add(key, blog.getId().toString(), System.currentTimeMillis());
+            redisCircuitBreaker.run(() -> stringRedisTemplate.opsForZSet().add(key, blog.getId().toString(), System.currentTimeMillis()));
         }
         //推送笔记id给粉丝
         return Result.ok(blog.getId());
@@ -182,9 +243,13 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
                 os = 1;
             }
         }
-        //根据id查询blog
-        String idStr = StrUtil.join(",", ids);
-        List<Blog> blogs = query().in("id", ids).last("ORDER BY FIELD(id," + idStr + ")").list();
+        //根据id批量查询blog缓存，未命中的再一次性查询数据库，结果保持收件箱顺序
+        List<Blog> blogs = cacheClient
+                .queryBatch(CACHE_BLOG_KEY, ids, Blog.class, this::listByIds, Blog::getId, CACHE_BLOG_TTL, TimeUnit.MINUTES)
+                .stream()
+                //缓存中的对象是共享的，复制一份再填充用户和点赞信息
+                .map(blog -> BeanUtil.copyProperties(blog, Blog.class))
+                .collect(Collectors.toList());
 
         for (Blog blog : blogs) {
             //查询blog有关的用户
@@ -203,7 +268,7 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
 
     private void queryBlogUser(Blog blog) {
         Long userId = blog.getUserId();
-        User user = userService.getById(userId);
+        UserDTO user = userService.queryUserById(userId);
         blog.setName(user.getNickName());
         blog.setIcon(user.getIcon());
     }
@@ -1,10 +1,8 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.util.BooleanUtil;
+import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONNull;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
@@ -12,8 +10,10 @@ import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.utils.CacheClient;
-import com.hmdp.utils.RedisData;
+import com.hmdp.utils.CacheInvalidator;
 import com.hmdp.utils.SystemConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.geo.Distance;
 import org.springframework.data.geo.GeoResult;
 import org.springframework.data.geo.GeoResults;
@@ -24,13 +24,12 @@ import org.springframework.data.redis.domain.geo.GeoReference;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 
-import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 
@@ -42,6 +41,7 @@ import static com.hmdp.utils.RedisConstants.*;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
 
@@ -49,7 +49,22 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     private StringRedisTemplate stringRedisTemplate;
     @Resource
     private CacheClient cacheClient;
-
+    @Resource
+    private CacheInvalidator cacheInvalidator;
+    //店铺缓存以hash保存，列表页只读取需要展示的字段
+    @Value("${hmdp.cache.shop-hash:false}")
+    private boolean shopHash;
+
+    //列表页展示的店铺字段，不包含营业时间和创建、更新时间
+    private static final String[] SHOP_LIST_FIELDS =
+            {"id", "name", "typeId", "images", "area", "address", "x", "y", "avgPrice", "sold", "comments", "score"};
+
+    @PostConstruct
+    public void initBloomFilter() {
+        //用数据库中已有的商铺id初始化布隆过滤器，拦截不存在的商铺id
+        cacheClient.registerBloomFilter(CACHE_SHOP_KEY, CACHE_SHOP_BLOOM_EXPECTED, CACHE_SHOP_BLOOM_FPP,
+                () -> listObjs(new QueryWrapper<Shop>().select("id")));
+    }
 
     @Override
     public Result queryById(Long id) {
@@ -58,9 +73,10 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
 //                .queryWithPassThrough(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
         //互斥锁解决缓存击穿
 //        Shop shop = queryWithMutex(id);
+        //概率提前刷新
+//        Shop shop = queryWithEarlyRefresh(id);
         //逻辑过期解决缓存击穿
-        Shop shop = cacheClient
-                .queryWithLogicalExpire(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        Shop shop = shopHash ? queryWithLogicalExpireHash(id) : queryWithLogicalExpire(id);
 
         if (shop == null) {
             return Result.fail("店铺不存在！");
@@ -68,151 +84,58 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         return Result.ok(shop);
     }
 
-    //创建线程池
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
-
     //逻辑过期解决缓存击穿
     public Shop queryWithLogicalExpire(Long id) {
-        String key = CACHE_SHOP_KEY + id;
-        //1.从redis查询商铺缓存
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        //2.判断是否存在
-        if (StrUtil.isBlank(shopJson)) {
-            //3.存在，直接退出
-            return null;
-        }
-        //4.命中需要把json反序列化为对象
-        RedisData redisData = JSONUtil.toBean(shopJson, RedisData.class);
-//        Shop shop = redisData.getData();
-//        LocalDateTime expireTime = redisData.getExpireTime();
-        Shop shop = JSONUtil.toBean((JSONObject) redisData.getData(), Shop.class);
-        LocalDateTime expireTime = redisData.getExpireTime();
-        //5判断是否过期
-        if (expireTime.isAfter(LocalDateTime.now())) {
-            //5.1未过期，直接返回店铺信息
-            return shop;
-        }
-        //5.2过期，需要重建缓存
-        //6重建缓存
-        //6.1获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
-        boolean isLock = tryLock(lockKey);
-        //6.2判断是否获取成功
-        if (isLock) {
-            //6.3成功，开启线程独立，实现缓存重建
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    this.saveShop2Redis(id, 20L);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    //释放锁
-                    unLock(lockKey);
-                }
-            });
-        }
-        //6.4返回过期的商铺信息
-        return shop;
+        return cacheClient
+                .queryWithLogicalExpire(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
     }
 
-    //互斥锁解决缓存击穿
-    public Shop queryWithMutex(Long id) {
-        String key = CACHE_SHOP_KEY + id;
-        //1.从redis查询商铺缓存
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        //2.判断是否存在
-        if (StrUtil.isNotBlank(shopJson)) {
-            //3.存在，直接退出
-            Shop shop = JSONUtil.toBean(shopJson, Shop.class);
-            return shop;
-        }
-        //判断命中的是否是空值
-        if (shopJson != null) {
-            //返回null
-            return null;
-        }
-        //4.实现缓存重建
-        //4.1实现互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
-        Shop shop = null;
-        try {
-            boolean isLock = tryLock(lockKey);
-            if (!isLock) {
-                //未获取到锁，休眠
-                Thread.sleep(50);
-                //重新获取
-                return queryWithMutex(id);
-            }
-            //获取到锁，从数据库查询重建缓存
-            shop = getById(id);
-            //模拟延迟
-            Thread.sleep(200);
-            //5.不存在，返回错误
-            if (shop == null) {
-                //将null写入redis
-                stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-                return null;
-            }
-            //6.存在，写入redis
-            stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(shop), CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        } finally {
-            //7.1释放互斥锁
-            unLock(lockKey);
-        }
-        //7.2返回
-        return shop;
+    //逻辑过期，店铺以hash保存
+    public Shop queryWithLogicalExpireHash(Long id) {
+        return cacheClient
+                .queryWithLogicalExpireHash(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
     }
 
-    //缓存穿透
-    public Shop queryWithPassThrough(Long id) {
-        String key = CACHE_SHOP_KEY + id;
-        //1.从redis查询商铺缓存
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        //2.判断是否存在
-        if (StrUtil.isNotBlank(shopJson)) {
-            //3.存在，直接退出
-            Shop shop = JSONUtil.toBean(shopJson, Shop.class);
-            return shop;
-        }
-        //缓存穿透判断""值
-        if (shopJson != null) {
-            return null;
-        }
-        //4.不存在，根据id查询数据库
-        Shop shop = getById(id);
-        //5.不存在，返回错误
-        if (shop == null) {
-            //将null写入redis
-            stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-            return null;
-        }
-        //6.存在，写入redis
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(shop), CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        //7.返回
-        return shop;
+    //概率提前刷新，热点店铺在过期前异步刷新，冷门店铺自然过期
+    public Shop queryWithEarlyRefresh(Long id) {
+        return cacheClient
+                .queryWithEarlyRefresh(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
     }
 
-    private boolean tryLock(String key) {
-        Boolean setIfAbsent = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
-        return BooleanUtil.isTrue(setIfAbsent);
+    //互斥锁解决缓存击穿，并发未命中在CacheClient中合并为一次重建
+    public Shop queryWithMutex(Long id) {
+        return cacheClient
+                .queryWithMutex(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
     }
 
-    private void unLock(String key) {
-        stringRedisTemplate.delete(key);
+    //缓存穿透
+    public Shop queryWithPassThrough(Long id) {
+        return cacheClient
+                .queryWithPassThrough(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
     }
 
-    public void saveShop2Redis(Long id, Long expireSecond) throws InterruptedException {
+    public void saveShop2Redis(Long id, Long expireSecond) {
+        String key = CACHE_SHOP_KEY + id;
+        //查询数据库前读取缓存版本
+        String version = cacheClient.currentVersion(key);
         //查询店铺数据
         Shop shop = getById(id);
-        Thread.sleep(200);
-        //封装逻辑过期时间
-        RedisData redisData = new RedisData();
-        redisData.setData(shop);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(expireSecond));
-        //写入redis
-        stringRedisTemplate.opsForValue().set(CACHE_SHOP_KEY + id, JSONUtil.toJsonStr(redisData));
+        //写入redis，与CacheClient使用同一种序列化格式，期间店铺被更新过(版本变化)时放弃写入
+        boolean written = shopHash
+                ? cacheClient.setWithLogicalExpireHash(key, shop, expireSecond, TimeUnit.SECONDS, version)
+                : cacheClient.setWithLogicalExpire(key, shop, expireSecond, TimeUnit.SECONDS, version);
+        if (!written) {
+            log.info("店铺{}在查询期间被更新，放弃写入缓存", id);
+        }
+    }
+
+    @Override
+    public Result saveShop(Shop shop) {
+        //写入数据库
+        save(shop);
+        //新商铺id写入布隆过滤器
+        cacheClient.addToBloomFilter(CACHE_SHOP_KEY, shop.getId());
+        return Result.ok(shop.getId());
     }
 
     @Override
@@ -224,8 +147,8 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         }
         //更新数据库
         updateById(shop);
-        //删除缓存
-        stringRedisTemplate.delete(CACHE_SHOP_KEY + id);
+        //事务提交后删除缓存，同时通知各节点清理本地缓存
+        cacheInvalidator.invalidate(CACHE_SHOP_KEY + id);
         return Result.ok();
     }
 
@@ -270,12 +193,17 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
             Distance distance = result.getDistance();
             distanceMap.put(shopIdStr, distance);
         });
-        //根据id查询
-        String idStr = StrUtil.join(",", ids);
-        List<Shop> shops = query().in("id", ids).last("ORDER BY FIELD(id," + idStr + ")").list();
-        for (Shop shop : shops) {
-            shop.setDistance(distanceMap.get(shop.getId().toString()).getValue());
-        }
+        //根据id批量查询缓存，未命中的再一次性查询数据库，结果保持距离顺序
+        List<Shop> cached = shopHash
+                ? cacheClient.queryFieldsBatch(CACHE_SHOP_KEY, ids, Shop.class, this::listByIds, Shop::getId,
+                        CACHE_SHOP_TTL, TimeUnit.MINUTES, SHOP_LIST_FIELDS)
+                : cacheClient.queryBatchWithLogicalExpire(
+                        CACHE_SHOP_KEY, ids, Shop.class, this::listByIds, Shop::getId, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        List<Shop> shops = cached.stream()
+                //缓存中的对象是共享的，复制一份再设置距离
+                .map(shop -> BeanUtil.copyProperties(shop, Shop.class)
+                        .setDistance(distanceMap.get(shop.getId().toString()).getValue()))
+                .collect(Collectors.toList());
         return Result.ok(shops);
     }
 }
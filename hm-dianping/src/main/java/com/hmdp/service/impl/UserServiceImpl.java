@@ -10,6 +10,7 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.Cached;
 import com.hmdp.utils.RegexUtils;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
@@ -153,6 +154,13 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         return Result.ok(count);
     }
 
+    @Override
+    @Cached(prefix = CACHE_USER_KEY, key = "#id", ttl = CACHE_USER_TTL)
+    public UserDTO queryUserById(Long id) {
+        User user = getById(id);
+        return user == null ? null : BeanUtil.copyProperties(user, UserDTO.class);
+    }
+
     private User createUserWithPhone(String phone) {
         //创建用户
         User user = new User();
@@ -1,35 +1,58 @@
 package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.net.NetUtil;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.RedisCircuitBreaker;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillStock;
+import com.hmdp.utils.SoldOutRegistry;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
-import org.springframework.aop.framework.AopContext;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Range;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
 import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_DEAD_LETTER;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAM;
 
 /**
  * <p>
@@ -51,132 +74,347 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     private StringRedisTemplate stringRedisTemplate;
     @Resource
     private RedissonClient redissonClient;
-    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+    @Resource
+    private RedisCircuitBreaker redisCircuitBreaker;
+    @Resource
+    private SoldOutRegistry soldOutRegistry;
+    @Resource
+    private SeckillStock seckillStock;
+    //通过代理调用本类方法，使@Transactional生效
+    @Lazy
+    @Resource
+    private IVoucherOrderService self;
+    //本节点的消费者名称，为空时使用 主机名:端口，需要在重启后保持不变
+    @Value("${hmdp.order.consumer.name:}")
+    private String consumerName;
+    //本节点处理订单的线程数，每个线程是一个独立的消费者
+    @Value("${hmdp.order.consumer.workers:4}")
+    private int workers;
+    //每次XREADGROUP读取的消息数，大于1时按优惠券分组批量写入数据库
+    @Value("${hmdp.order.consumer.batch-size:100}")
+    private int batchSize;
+    //pending-list中的消息空闲超过该时间视为原消费者已经不在，由存活的节点接管
+    @Value("${hmdp.order.consumer.claim-idle-seconds:60}")
+    private long claimIdleSeconds;
+    @Value("${hmdp.order.consumer.claim-interval-seconds:30}")
+    private long claimIntervalSeconds;
+    @Value("${server.port:8081}")
+    private int serverPort;
+    //XREADGROUP的阻塞时间必须小于命令超时时间，否则没有新消息时每次读取都会超时
+    @Value("${spring.redis.timeout:1s}")
+    private Duration redisTimeout;
 
-    //静态代码块就是类加载的时候会被执行一次,不会浪费IO资源，避免每次加载都要重新创建对象
-    static {
-        SECKILL_SCRIPT = new DefaultRedisScript<>();
-        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
-        SECKILL_SCRIPT.setResultType(Long.class);//配置返回值
-    }
+    //订单消息所在的stream和消费者组，seckill.lua写入同一个stream
+    private static final String QUEUE_NAME = SECKILL_ORDER_STREAM;
+    private static final String GROUP_NAME = "g1";
+    //pending-list重试间隔(毫秒)
+    private static final long MIN_RETRY_BACKOFF = 20L;
+    private static final long MAX_RETRY_BACKOFF = 2000L;
 
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
+    //每次接管时XPENDING查看的消息数
+    private static final long CLAIM_SCAN_COUNT = 1000L;
+
+    private ExecutorService seckillOrderExecutor;
+    private ScheduledExecutorService claimExecutor;
+    private String nodeName;
+    private volatile boolean running = true;
 
     @PostConstruct
     public void init() {
-        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
+        //1.创建消费者组，stream不存在时一并创建
+        createGroup();
+        //2.每个线程使用 节点名-序号 作为消费者名称，组内的消息在所有节点的所有线程之间分配
+        nodeName = StrUtil.isNotBlank(consumerName) ? consumerName : NetUtil.getLocalHostName() + ":" + serverPort;
+        AtomicInteger index = new AtomicInteger();
+        seckillOrderExecutor = Executors.newFixedThreadPool(workers,
+                r -> new Thread(r, "seckill-order-" + index.incrementAndGet()));
+        for (int i = 0; i < workers; i++) {
+            seckillOrderExecutor.submit(new VoucherOrderHandler(nodeName + "-" + i));
+        }
+        //3.定期接管其他消费者遗留的消息，清理已经不在的消费者
+        claimExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "seckill-order-claim");
+            thread.setDaemon(true);
+            return thread;
+        });
+        claimExecutor.scheduleWithFixedDelay(this::claimIdleOrders, claimIntervalSeconds, claimIntervalSeconds, TimeUnit.SECONDS);
+        log.info("订单消费者启动，consumer={}，线程数={}", nodeName, workers);
+    }
+
+    /**
+     * 节点下线、线程数减少或主机名变化后，旧消费者名称不会再出现，它们pending-list中的订单只能由其他节点接管。
+     * XCLAIM带有最小空闲时间，多个节点同时接管同一条消息时只有一个成功。
+     * 原消费者可能只是在数据库故障时退避重试，同一订单仍可能被两个消费者同时写入，由tb_voucher_order的(user_id, voucher_id)唯一索引保证只写入一次
+     */
+    private void claimIdleOrders() {
+        Duration minIdle = Duration.ofSeconds(claimIdleSeconds);
+        String claimer = nodeName + "-claim";
+        try {
+            //1.XPENDING stream.orders g1 - + 1000，找出空闲太久的消息，每次接管一批
+            while (running) {
+                PendingMessages pending = stringRedisTemplate.opsForStream()
+                        .pending(QUEUE_NAME, GROUP_NAME, Range.unbounded(), CLAIM_SCAN_COUNT);
+                RecordId[] idle = pending.stream()
+                        .filter(message -> message.getElapsedTimeSinceLastDelivery().compareTo(minIdle) >= 0)
+                        .limit(Math.max(1, batchSize))
+                        .map(PendingMessage::getId)
+                        .toArray(RecordId[]::new);
+                if (idle.length == 0) {
+                    break;
+                }
+                //2.XCLAIM stream.orders g1 claimer minIdle ids，转给本节点后写入数据库并确认
+                List<ByteRecord> claimed = stringRedisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                        connection.streamCommands().xClaim(QUEUE_NAME.getBytes(StandardCharsets.UTF_8),
+                                GROUP_NAME, claimer, minIdle, idle));
+                if (claimed == null || claimed.isEmpty()) {
+                    break;
+                }
+                List<MapRecord<String, Object, Object>> records = new ArrayList<>(claimed.size());
+                for (ByteRecord record : claimed) {
+                    MapRecord<String, String, String> value = record.deserialize(StringRedisSerializer.UTF_8);
+                    records.add(StreamRecords.<String, Object, Object>mapBacked(new LinkedHashMap<>(value.getValue()))
+                            .withId(value.getId()).withStreamKey(QUEUE_NAME));
+                }
+                log.warn("接管{}条空闲超过{}秒的订单消息", records.size(), claimIdleSeconds);
+                handleRecords(records);
+                if (idle.length < batchSize) {
+                    break;
+                }
+            }
+            //3.删除没有未确认消息且长时间没有读取的消费者，正在运行的消费者每次阻塞读取都会刷新空闲时间
+            StreamInfo.XInfoConsumers consumers = stringRedisTemplate.opsForStream().consumers(QUEUE_NAME, GROUP_NAME);
+            for (int i = 0; i < consumers.size(); i++) {
+                StreamInfo.XInfoConsumer consumer = consumers.get(i);
+                if (consumer.pendingCount() == 0 && consumer.idleTimeMs() >= minIdle.toMillis()
+                        && !consumer.consumerName().startsWith(nodeName + "-")) {
+                    stringRedisTemplate.opsForStream().deleteConsumer(QUEUE_NAME, Consumer.from(GROUP_NAME, consumer.consumerName()));
+                    log.info("删除已经不在的订单消费者，consumer={}", consumer.consumerName());
+                }
+            }
+        } catch (Exception e) {
+            //接管失败的消息仍在原pending-list中，下一轮再试
+            log.error("接管空闲订单消息异常", e);
+        }
+    }
+
+    //XGROUP CREATE stream.orders g1 0 MKSTREAM，组已存在时忽略
+    private void createGroup() {
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands()
+                    .xGroupCreate(QUEUE_NAME.getBytes(StandardCharsets.UTF_8), GROUP_NAME, ReadOffset.from("0"), true));
+        } catch (DataAccessException e) {
+            String message = NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+            if (message == null || !message.contains("BUSYGROUP")) {
+                throw e;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        //停止读取新消息，已读取未确认的消息留在pending-list，重启后由同名消费者继续处理
+        running = false;
+        claimExecutor.shutdownNow();
+        seckillOrderExecutor.shutdown();
+        seckillOrderExecutor.awaitTermination(5, TimeUnit.SECONDS);
     }
 
     private class VoucherOrderHandler implements Runnable {
-        String queueName = "stream.orders";
+        private final String consumer;
+
+        private VoucherOrderHandler(String consumer) {
+            this.consumer = consumer;
+        }
 
         @Override
         public void run() {
-            while (true) {
+            //先处理本消费者上次退出时未确认的消息
+            handlePendingList();
+            while (running) {
                 try {
-                    //1.获取消息队列中的订单中的信息XREADGROUP GROUP g1 c1 COUNT 1 STREAMS streams.orders >
+                    //1.获取消息队列中的订单中的信息XREADGROUP GROUP g1 consumer COUNT batchSize BLOCK 命令超时时间的一半 STREAMS streams.orders >
                     List<MapRecord<String, Object, Object>> read = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
-                            StreamOffset.create(queueName, ReadOffset.lastConsumed())
+                            Consumer.from(GROUP_NAME, consumer),
+                            StreamReadOptions.empty().count(batchSize).block(Duration.ofMillis(Math.max(1, redisTimeout.toMillis() / 2))),
+                            StreamOffset.create(QUEUE_NAME, ReadOffset.lastConsumed())
                     );
                     //2.判断获取消息是否成功
                     if (read == null || read.isEmpty()) {
                         //2.1如果获取失败，说明没有消息，继续下一次循环
                         continue;
                     }
-                    //3.如果获取成功，可以下单
-                    MapRecord<String, Object, Object> record = read.get(0);
-                    Map<Object, Object> values = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
-                    //4.创建订单
-                    handleVoucherOrder(voucherOrder);
-                    //5.ACK确认   SACK streams.orders g1 id
-                    stringRedisTemplate.opsForStream().acknowledge(queueName,"g1",record.getId());
+                    //3.如果获取成功，可以下单并确认
+                    handleRecords(read);
                 } catch (Exception e) {
-                    log.error("处理订单异常", e);
+                    log.error("处理订单异常，consumer={}", consumer, e);
                     handlePendingList();
                 }
             }
         }
 
         private void handlePendingList() {
-            while (true) {
+            long backoff = MIN_RETRY_BACKOFF;
+            while (running) {
                 try {
-                    //1.获取pending-list队列中的订单中的信息XREADGROUP GROUP g1 c1 COUNT 1 STREAMS stream.orders 0
+                    //1.获取本消费者pending-list中的订单信息XREADGROUP GROUP g1 consumer COUNT batchSize STREAMS stream.orders 0
                     List<MapRecord<String, Object, Object>> read = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1),
-                            StreamOffset.create(queueName, ReadOffset.from("0"))
+                            Consumer.from(GROUP_NAME, consumer),
+                            StreamReadOptions.empty().count(batchSize),
+                            StreamOffset.create(QUEUE_NAME, ReadOffset.from("0"))
                     );
                     //2.判断获取消息是否成功
                     if (read == null || read.isEmpty()) {
                         //2.1如果获取失败，说明pending-list没有异常消息，结束循环
                         break;
                     }
-                    //3.如果获取成功，可以下单
-                    MapRecord<String, Object, Object> record = read.get(0);
-                    Map<Object, Object> values = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
-                    //4.创建订单
-                    handleVoucherOrder(voucherOrder);
-                    //5.ACK确认   SACK streams.orders g1 id
-                    stringRedisTemplate.opsForStream().acknowledge(queueName,"g1",record.getId());
+                    //3.如果获取成功，可以下单并确认
+                    handleRecords(read);
+                    backoff = MIN_RETRY_BACKOFF;
                 } catch (Exception e) {
-                    log.error("处理pending-list订单异常", e);
+                    log.error("处理pending-list订单异常，consumer={}", consumer, e);
                     try {
-                        Thread.sleep(20);
+                        //数据库不可用时逐渐拉长重试间隔
+                        Thread.sleep(backoff);
+                        backoff = Math.min(backoff * 2, MAX_RETRY_BACKOFF);
                     } catch (InterruptedException ex) {
-                        ex.printStackTrace();
+                        Thread.currentThread().interrupt();
+                        return;
                     }
                 }
             }
         }
     }
 
+    /**
+     * 处理读取到的一批消息，写入数据库后用一次XACK确认。
+     * 批量写入失败时整批回滚，改为逐条写入；逐条仍失败的消息中，数据库不可用等暂时性错误留在pending-list重试，
+     * 其他错误(如消息内容错误、违反约束)重试也不会成功，转入死信stream后确认，不会阻塞后面的消息
+     */
+    private void handleRecords(List<MapRecord<String, Object, Object>> records) {
+        List<RecordId> ids = new ArrayList<>(records.size());
+        //1.解析订单，缺少字段的消息直接转入死信
+        List<MapRecord<String, Object, Object>> valid = new ArrayList<>(records.size());
+        List<VoucherOrder> voucherOrders = new ArrayList<>(records.size());
+        for (MapRecord<String, Object, Object> record : records) {
+            VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true);
+            if (voucherOrder.getId() == null || voucherOrder.getUserId() == null || voucherOrder.getVoucherId() == null) {
+                deadLetter(record, "订单消息缺少字段");
+                ids.add(record.getId());
+                continue;
+            }
+            valid.add(record);
+            voucherOrders.add(voucherOrder);
+        }
+        //2.批量模式下整批在一个事务中写入，数据库库存不足而没有写入的订单转入死信
+        boolean written = false;
+        if (batchSize > 1 && voucherOrders.size() > 1) {
+            try {
+                List<VoucherOrder> rejected = self.creatVoucherOrders(voucherOrders);
+                for (VoucherOrder voucherOrder : rejected) {
+                    MapRecord<String, Object, Object> record = valid.get(voucherOrders.indexOf(voucherOrder));
+                    log.error("优惠券库存不足，订单转入死信，recordId={}", record.getId());
+                    deadLetter(record, "优惠券已经抢光了");
+                }
+                valid.forEach(record -> ids.add(record.getId()));
+                written = true;
+            } catch (RuntimeException e) {
+                log.warn("批量写入{}条订单失败，改为逐条写入：{}", voucherOrders.size(), e.toString());
+            }
+        }
+        //3.逐条写入
+        RuntimeException retry = null;
+        for (int i = 0; !written && i < valid.size(); i++) {
+            MapRecord<String, Object, Object> record = valid.get(i);
+            try {
+                handleVoucherOrder(voucherOrders.get(i));
+                ids.add(record.getId());
+            } catch (DuplicateKeyException e) {
+                //3.1违反(user_id, voucher_id)唯一索引，说明该订单已经由其他消费者写入，直接确认
+                log.info("订单已写入，跳过重复消息，recordId={}", record.getId());
+                ids.add(record.getId());
+            } catch (RuntimeException e) {
+                if (isTransient(e)) {
+                    //3.2暂时性错误(包括其他消费者正在处理同一订单)不确认，由pending-list稍后重试
+                    retry = e;
+                    continue;
+                }
+                log.error("订单写入失败，转入死信，recordId={}", record.getId(), e);
+                deadLetter(record, e.toString());
+                ids.add(record.getId());
+            }
+        }
+        //4.ACK确认   XACK streams.orders g1 id1 id2 ...
+        if (!ids.isEmpty()) {
+            stringRedisTemplate.opsForStream().acknowledge(QUEUE_NAME, GROUP_NAME, ids.toArray(new RecordId[0]));
+        }
+        if (retry != null) {
+            throw retry;
+        }
+    }
+
+    //数据库连接、事务、死锁等错误重试可能成功
+    private static boolean isTransient(RuntimeException e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof TransactionException;
+    }
+
+    //原消息内容加上原消息id和失败原因写入死信stream
+    private void deadLetter(MapRecord<String, Object, Object> record, String error) {
+        Map<Object, Object> body = new LinkedHashMap<>(record.getValue());
+        body.put("sourceId", record.getId().getValue());
+        body.put("error", StrUtil.maxLength(error, 500));
+        stringRedisTemplate.opsForStream().add(StreamRecords.mapBacked(body).withStreamKey(SECKILL_ORDER_DEAD_LETTER));
+    }
+
     private void handleVoucherOrder(VoucherOrder voucherOrder) {
-//        创建锁对象
-        RLock lock = redissonClient.getLock("lock:order:" + voucherOrder.getUserId());
+//        创建锁对象，同一用户不同优惠券的订单可以并行写入
+        RLock lock = redissonClient.getLock("lock:order:" + voucherOrder.getUserId() + ":" + voucherOrder.getVoucherId());
         //获取锁
         boolean isLock = lock.tryLock();
         if (!isLock) {
-            //获取锁失败，返回错误信息
-            log.error("不能重复抢单！");
-            return;
+            //获取锁失败，说明其他消费者正在写入同一用户同一优惠券的订单(如接管的消息)，不确认，稍后重试
+            throw new CannotAcquireLockException("订单正在被其他消费者处理，orderId=" + voucherOrder.getId());
         }
         try {//C+A+T
-            proxy.creatVoucherOrder(voucherOrder);
+            self.creatVoucherOrder(voucherOrder);
         } finally {
             //释放锁
             lock.unlock();
         }
     }
 
-    private IVoucherOrderService proxy;
-
     @Override
     //秒杀优化将同步下单变为异步下单
     public Result seckillVoucher(Long voucherId) {
+        //已售罄的优惠券在本地直接拒绝，不再生成订单id和执行脚本
+        if (soldOutRegistry.isSoldOut(voucherId)) {
+            return Result.fail("库存不足");
+        }
+        //redis熔断时秒杀无法判断库存和资格，直接快速失败
+        if (!redisCircuitBreaker.allowRequest()) {
+            return Result.fail("活动太火爆，请稍后再试");
+        }
         //获取用户
         Long userId = UserHolder.getUser().getId();
         //获取订单id
         long orderId = redisIdWorker.nextId("order");
-        //1.执行lua脚本
-        Long result = stringRedisTemplate.execute(
-                SECKILL_SCRIPT,
-                Collections.emptyList(),
-                voucherId.toString(), userId.toString(), String.valueOf(orderId)
-        );
+        //1.执行lua脚本，判断资格并扣减库存
+        int r = redisCircuitBreaker.call(() -> seckillStock.acquire(voucherId, userId, orderId));
         //2判断结果是否是0
-        int r = result.intValue();
-        if (r != 0) {
-            //2.1不为0，代表没有购买资格
-            return Result.fail(r == 1 ? "库存不足" : "不能重复下单");
+        if (r != SeckillStock.SUCCESS) {
+            //2.1不为0，代表没有购买资格，库存不足时标记售罄
+            if (r == SeckillStock.SOLD_OUT) {
+                soldOutRegistry.markSoldOut(voucherId);
+            }
+            if (r == SeckillStock.NOT_FOUND) {
+                return Result.fail("优惠券不存在");
+            }
+            return Result.fail(r == SeckillStock.SOLD_OUT ? "库存不足" : "不能重复下单");
         }
 
-        //开启独立线程，不断地执行任务(即从阻塞队列里获取id写入数据库)
-        //获取代理对象(事务)
-        proxy = (IVoucherOrderService) AopContext.currentProxy();
+        //订单由消费者线程从stream中读取后写入数据库
         //3.1返回订单id
         return Result.ok(orderId);
 
@@ -227,11 +465,11 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         //5.一人一单
         //5.1查询订单
         Long userId = voucherOrder.getUserId();
-        Integer count = query().eq("user_id", userId).eq("voucher_id", voucherOrder).count();
+        Integer count = query().eq("user_id", userId).eq("voucher_id", voucherOrder.getVoucherId()).count();
         //5.2判断是否存在
         if (count > 0) {
-            //用户已经购买过了
-            log.error("用户已经购买过了!");
+            //用户已经购买过了，消息重复投递时订单已经写入，直接确认
+            log.info("用户已经购买过了，orderId={}", voucherOrder.getId());
             return;
         }
 
@@ -243,11 +481,65 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
                 .eq("voucher_id", voucherOrder.getVoucherId()).gt("stock", 0)//where id = ? and stock = ?
                 .update();
         if (!success) {
-            log.error("优惠券已经抢光了");
-            return;
+            //数据库库存少于redis中的库存，订单无法写入，抛出异常由消费者转入死信
+            throw new IllegalStateException("优惠券已经抢光了，voucherId=" + voucherOrder.getVoucherId());
         }
-        //7.创建订单
+        //7.创建订单，(user_id, voucher_id)唯一索引保证并发消费同一订单时只写入一次
         save(voucherOrder);
     }
 
+    /**
+     * 批量创建订单：按优惠券分组，每组一次查询已下单用户、一次扣减k个库存、一次多行插入，整批在同一个事务中。
+     * 一人一单和库存已经由seckill.lua保证，这里的查询用于消息重复投递时跳过已经写入的订单
+     * @return 数据库库存不足而没有写入的订单，由调用方转入死信
+     */
+    @Override
+    @Transactional
+    public List<VoucherOrder> creatVoucherOrders(List<VoucherOrder> voucherOrders) {
+        List<VoucherOrder> rejected = new ArrayList<>();
+        //1.按优惠券分组，同一组中每个用户只保留一条
+        Map<Long, Map<Long, VoucherOrder>> groups = new LinkedHashMap<>();
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            groups.computeIfAbsent(voucherOrder.getVoucherId(), k -> new LinkedHashMap<>())
+                    .putIfAbsent(voucherOrder.getUserId(), voucherOrder);
+        }
+        groups.forEach((voucherId, byUser) -> {
+            //2.一人一单，一次查询出已经下过单的用户
+            List<Object> orderedUsers = listObjs(new QueryWrapper<VoucherOrder>()
+                    .select("user_id").eq("voucher_id", voucherId).in("user_id", byUser.keySet()));
+            for (Object userId : orderedUsers) {
+                byUser.remove(Long.valueOf(userId.toString()));
+            }
+            if (byUser.isEmpty()) {
+                return;
+            }
+            List<VoucherOrder> orders = new ArrayList<>(byUser.values());
+            //3.一次扣减k个库存  set stock = stock - k where voucher_id = ? and stock >= k
+            int k = orders.size();
+            boolean success = seckillVoucherService.update()
+                    .setSql("stock = stock - " + k)
+                    .eq("voucher_id", voucherId).ge("stock", k)
+                    .update();
+            if (!success) {
+                //数据库库存少于redis中的库存，逐条扣减，扣不到的订单返回给调用方
+                log.error("优惠券{}库存不足{}，逐条扣减", voucherId, k);
+                orders.removeIf(order -> {
+                    boolean taken = seckillVoucherService.update()
+                            .setSql("stock = stock - 1")
+                            .eq("voucher_id", voucherId).gt("stock", 0)
+                            .update();
+                    if (!taken) {
+                        rejected.add(order);
+                    }
+                    return !taken;
+                });
+                if (orders.isEmpty()) {
+                    return;
+                }
+            }
+            //4.多行插入订单
+            baseMapper.insertBatch(orders);
+        });
+        return rejected;
+    }
 }
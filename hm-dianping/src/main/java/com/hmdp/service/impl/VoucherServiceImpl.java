@@ -7,14 +7,18 @@ import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import com.hmdp.utils.CacheEvict;
+import com.hmdp.utils.Cached;
+import com.hmdp.utils.SeckillStock;
+import com.hmdp.utils.SoldOutRegistry;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
 import java.util.List;
 
-import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
@@ -30,18 +34,31 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     @Resource
     private ISeckillVoucherService seckillVoucherService;
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private SoldOutRegistry soldOutRegistry;
+    @Resource
+    private SeckillStock seckillStock;
+    //通过代理调用本类方法，使@Cached生效
+    @Lazy
+    @Resource
+    private IVoucherService self;
 
     @Override
     public Result queryVoucherOfShop(Long shopId) {
         // 查询优惠券信息
-        List<Voucher> vouchers = getBaseMapper().queryVoucherOfShop(shopId);
+        List<Voucher> vouchers = self.listVoucherOfShop(shopId);
         // 返回结果
         return Result.ok(vouchers);
     }
 
+    @Override
+    @Cached(prefix = CACHE_SHOP_VOUCHER_KEY, key = "#shopId", strategy = Cached.Strategy.MUTEX, ttl = CACHE_VOUCHER_TTL)
+    public List<Voucher> listVoucherOfShop(Long shopId) {
+        return getBaseMapper().queryVoucherOfShop(shopId);
+    }
+
     @Override
     @Transactional
+    @CacheEvict(prefix = CACHE_SHOP_VOUCHER_KEY, key = "#voucher.shopId")
     public void addSeckillVoucher(Voucher voucher) {
         // 保存优惠券
         save(voucher);
@@ -53,7 +70,9 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
         //保存秒杀库存到redis中
-        stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY+voucher.getId(),voucher.getStock().toString());
+        seckillStock.init(voucher.getId(), voucher.getStock());
+        //有库存后清除各节点的售罄标记
+        soldOutRegistry.clear(voucher.getId());
     }
 
 
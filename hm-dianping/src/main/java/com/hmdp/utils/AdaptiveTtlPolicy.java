@@ -0,0 +1,120 @@
+package com.hmdp.utils;
+
+import cn.hutool.cache.Cache;
+import cn.hutool.cache.CacheUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:按访问频率调整缓存有效期。访问频率取自HotKeyDetector在滑动窗口内的估算值：
+ * 高频且近期没有被更新的key有效期延长，低频的长尾key有效期缩短，到期后尽早从redis中释放内存，
+ * 近期被更新过的key保持基础有效期，频繁更新的数据不会因为有效期过长而依赖失效通知。
+ * 只作用于有真实过期时间的写入，逻辑过期的key不会从redis中过期，调整它的有效期只会改变重建频率。
+ * 缩短长尾key的有效期会降低命中率、增加回源，默认关闭，内存比数据库更紧张时再开启
+ * @Version:java_15
+ */
+@Component
+public class AdaptiveTtlPolicy {
+
+    public static final String HOT = "hot";
+    public static final String WARM = "warm";
+    public static final String COLD = "cold";
+
+    //记录近期更新的key数量上限
+    private static final int CACHE_UPDATED_CAPACITY = 10000;
+
+    private final HotKeyDetector hotKeyDetector;
+    private final boolean enabled;
+    private final long hotFrequency;
+    private final long coldFrequency;
+    private final double hotFactor;
+    private final double coldFactor;
+    private final long minTtlMillis;
+    private final long maxTtlMillis;
+    //近期被更新过的key
+    private final Cache<String, Boolean> recentlyUpdated;
+
+    private final Map<String, LongAdder> tierCounts = new LinkedHashMap<>();
+
+    public AdaptiveTtlPolicy(HotKeyDetector hotKeyDetector,
+                             @Value("${hmdp.cache.adaptive-ttl.enabled:false}") boolean enabled,
+                             @Value("${hmdp.cache.adaptive-ttl.hot-frequency:100}") long hotFrequency,
+                             @Value("${hmdp.cache.adaptive-ttl.cold-frequency:5}") long coldFrequency,
+                             @Value("${hmdp.cache.adaptive-ttl.hot-factor:4}") double hotFactor,
+                             @Value("${hmdp.cache.adaptive-ttl.cold-factor:0.5}") double coldFactor,
+                             @Value("${hmdp.cache.adaptive-ttl.min-ttl-seconds:120}") long minTtlSeconds,
+                             @Value("${hmdp.cache.adaptive-ttl.max-ttl-seconds:14400}") long maxTtlSeconds,
+                             @Value("${hmdp.cache.adaptive-ttl.update-window-seconds:600}") long updateWindowSeconds) {
+        this.hotKeyDetector = hotKeyDetector;
+        this.enabled = enabled;
+        this.hotFrequency = hotFrequency;
+        this.coldFrequency = coldFrequency;
+        this.hotFactor = hotFactor;
+        this.coldFactor = coldFactor;
+        this.minTtlMillis = TimeUnit.SECONDS.toMillis(minTtlSeconds);
+        this.maxTtlMillis = TimeUnit.SECONDS.toMillis(maxTtlSeconds);
+        this.recentlyUpdated = CacheUtil.newLRUCache(CACHE_UPDATED_CAPACITY, TimeUnit.SECONDS.toMillis(updateWindowSeconds));
+        tierCounts.put(HOT, new LongAdder());
+        tierCounts.put(WARM, new LongAdder());
+        tierCounts.put(COLD, new LongAdder());
+    }
+
+    /**
+     * 计算key本次写入的有效期
+     * @param baseMillis 调用方指定的有效期
+     */
+    public long ttl(String key, long baseMillis) {
+        if (!enabled) {
+            return baseMillis;
+        }
+        String tier = tier(hotKeyDetector.frequency(key), recentlyUpdated.containsKey(key));
+        tierCounts.get(tier).increment();
+        return ttlForTier(tier, baseMillis);
+    }
+
+    //缓存被失效说明数据发生了更新
+    public void onUpdate(String key) {
+        if (enabled) {
+            recentlyUpdated.put(key, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * 按窗口内访问次数分级
+     * @param frequency       HotKeyDetector估算的窗口内访问次数
+     * @param recentlyUpdated 近期是否被更新过
+     */
+    public String tier(long frequency, boolean recentlyUpdated) {
+        if (frequency < coldFrequency) {
+            return COLD;
+        }
+        return frequency >= hotFrequency && !recentlyUpdated ? HOT : WARM;
+    }
+
+    //按分级调整有效期，热点key不超过max-ttl，长尾key不低于min-ttl，调整方向不会与分级相反
+    public long ttlForTier(String tier, long baseMillis) {
+        switch (tier) {
+            case HOT:
+                return Math.max(baseMillis, Math.min((long) (baseMillis * hotFactor), maxTtlMillis));
+            case COLD:
+                return Math.min(baseMillis, Math.max((long) (baseMillis * coldFactor), minTtlMillis));
+            default:
+                return baseMillis;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        tierCounts.forEach((tier, count) -> stats.put(tier, count.sum()));
+        stats.put("recentlyUpdated", recentlyUpdated.size());
+        return stats;
+    }
+}
@@ -0,0 +1,37 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Set;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:第四个拦截器，运维接口只允许hmdp.admin.user-ids中的用户访问，其他登录用户返回403
+ * @Version:java_15
+ */
+public class AdminInterceptor implements HandlerInterceptor {
+    private final Set<Long> adminUserIds;
+
+    public AdminInterceptor(Set<Long> adminUserIds) {
+        this.adminUserIds = adminUserIds;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        //登录拦截器已保证用户存在，这里只判断是否是管理员
+        UserDTO user = UserHolder.getUser();
+        if (user != null && adminUserIds.contains(user.getId())) {
+            return true;
+        }
+        response.setStatus(403);
+        response.setContentType("application/json;charset=UTF-8");
+        response.getWriter().write(JSONUtil.toJsonStr(Result.fail("没有权限")));
+        return false;
+    }
+}
@@ -0,0 +1,240 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static com.hmdp.utils.RedisConstants.CACHE_NULL_TTL;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:CacheClient的异步版本，基于lettuce异步命令，返回CompletableFuture，聚合多个查询的接口可以并发发出请求。
+ * 使用独立的连接(字节编解码)，缓存格式与CacheClient一致，两者可以读写同一个key；数据库回源在专用线程池中执行，
+ * 不占用lettuce的IO线程。不经过本地一级缓存和布隆过滤器
+ * @Version:java_15
+ */
+@Slf4j
+@Component
+public class AsyncCacheClient {
+
+    private final RedisClient redisClient;
+    private final StatefulRedisConnection<byte[], byte[]> connection;
+    private final RedisAsyncCommands<byte[], byte[]> commands;
+    private final CacheCodec codec;
+    private final CacheMetrics metrics;
+    private final DbBulkhead dbBulkhead;
+    private final RedisCircuitBreaker circuitBreaker;
+    private final AdaptiveTtlPolicy ttlPolicy;
+    private final double ttlJitter;
+    //数据库回源线程池
+    private final ThreadPoolExecutor dbExecutor;
+    private final LongAdder rejected = new LongAdder();
+
+    //redis中缓存空值
+    private static final byte[] EMPTY = new byte[0];
+    //redis不可用时的读取结果，只按引用比较
+    private static final byte[] UNAVAILABLE = new byte[0];
+
+    public AsyncCacheClient(RedisProperties redisProperties, CacheCodec codec, CacheMetrics metrics,
+                            DbBulkhead dbBulkhead, RedisCircuitBreaker circuitBreaker, AdaptiveTtlPolicy ttlPolicy,
+                            @Value("${hmdp.cache.ttl-jitter:0.1}") double ttlJitter,
+                            @Value("${hmdp.cache.async.db-threads:16}") int dbThreads,
+                            @Value("${hmdp.cache.async.queue-capacity:1000}") int queueCapacity) {
+        this.codec = codec;
+        this.metrics = metrics;
+        this.dbBulkhead = dbBulkhead;
+        this.circuitBreaker = circuitBreaker;
+        this.ttlPolicy = ttlPolicy;
+        this.ttlJitter = ttlJitter;
+        //1.按spring.redis配置创建连接
+        RedisURI.Builder builder = RedisURI.builder()
+                .withHost(redisProperties.getHost())
+                .withPort(redisProperties.getPort())
+                .withDatabase(redisProperties.getDatabase());
+        if (StrUtil.isNotBlank(redisProperties.getPassword())) {
+            builder.withPassword(redisProperties.getPassword().toCharArray());
+        }
+        if (redisProperties.getTimeout() != null) {
+            builder.withTimeout(redisProperties.getTimeout());
+        }
+        this.redisClient = RedisClient.create(builder.build());
+        this.connection = redisClient.connect(ByteArrayCodec.INSTANCE);
+        this.commands = connection.async();
+        //2.回源线程池，队列满时快速失败
+        AtomicInteger index = new AtomicInteger();
+        this.dbExecutor = new ThreadPoolExecutor(dbThreads, dbThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "cache-async-db-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 缓存穿透的异步版本，缓存格式与CacheClient.queryWithPassThrough一致
+     */
+    public <T, ID> CompletableFuture<T> queryWithPassThrough(
+            String keyPrefix, ID id, Class<T> type, Function<ID, T> dbFallback, Long time, TimeUnit unit) {
+        byte[] key = bytes(keyPrefix + id);
+        //1.redis熔断时直接回源
+        if (!circuitBreaker.allowRequest()) {
+            metrics.increment(keyPrefix, CacheMetrics.PASS_THROUGH, CacheMetrics.REDIS_UNAVAILABLE);
+            return loadFromDb(keyPrefix, id, dbFallback);
+        }
+        //2.异步查询redis，读取失败按redis不可用处理
+        return circuitBreaker.callAsync(() -> commands.get(key))
+                .handle((bytes, e) -> {
+                    if (e != null) {
+                        log.warn("异步读取redis失败，key={}：{}", keyPrefix + id, e.toString());
+                        return UNAVAILABLE;
+                    }
+                    return bytes;
+                })
+                .thenCompose(bytes -> {
+                    if (bytes == UNAVAILABLE) {
+                        metrics.increment(keyPrefix, CacheMetrics.PASS_THROUGH, CacheMetrics.REDIS_UNAVAILABLE);
+                        return loadFromDb(keyPrefix, id, dbFallback);
+                    }
+                    //3.命中
+                    if (bytes != null && bytes.length > 0) {
+                        try {
+                            T t = codec.decode(bytes, type);
+                            metrics.increment(keyPrefix, CacheMetrics.PASS_THROUGH, CacheMetrics.HIT);
+                            return CompletableFuture.completedFuture(t);
+                        } catch (RuntimeException e) {
+                            //无法反序列化时按未命中处理，回源后覆盖
+                            metrics.increment(keyPrefix, CacheMetrics.PASS_THROUGH, CacheMetrics.DECODE_ERROR);
+                            log.warn("缓存反序列化失败，key={}：{}", keyPrefix + id, e.toString());
+                            bytes = null;
+                        }
+                    }
+                    //4.命中空值
+                    if (bytes != null) {
+                        metrics.increment(keyPrefix, CacheMetrics.PASS_THROUGH, CacheMetrics.NULL_HIT);
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    //5.未命中，回源后异步写回，不等待写入结果
+                    metrics.increment(keyPrefix, CacheMetrics.PASS_THROUGH, CacheMetrics.MISS);
+                    return loadFromDb(keyPrefix, id, dbFallback).thenApply(t -> {
+                        if (t == null) {
+                            metrics.increment(keyPrefix, CacheMetrics.PASS_THROUGH, CacheMetrics.NULL_STORE);
+                            write(key, EMPTY, TimeUnit.MINUTES.toMillis(CACHE_NULL_TTL));
+                        } else {
+                            long ttl = ttlPolicy.ttl(keyPrefix + id, unit.toMillis(time));
+                            write(key, codec.encode(t), CacheClient.jitter(ttl, ttlJitter));
+                        }
+                        return t;
+                    });
+                });
+    }
+
+    /**
+     * 异步查询有序集合中成员的分数，redis不可用时返回null
+     */
+    public CompletableFuture<Double> score(String key, String member) {
+        if (!circuitBreaker.allowRequest()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return circuitBreaker.callAsync(() -> commands.zscore(bytes(key), bytes(member)))
+                .exceptionally(e -> {
+                    log.warn("异步读取redis失败，key={}：{}", key, e.toString());
+                    return null;
+                });
+    }
+
+    /**
+     * 等待异步结果，解开CompletionException，使CacheBusyException等业务异常能被统一异常处理识别
+     */
+    public static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    //在舱壁限制内异步查询数据库，线程池队列满时同样快速失败
+    private <T, ID> CompletableFuture<T> loadFromDb(String keyPrefix, ID id, Function<ID, T> dbFallback) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                if (!dbBulkhead.tryAcquire(keyPrefix)) {
+                    metrics.increment(keyPrefix, CacheMetrics.PASS_THROUGH, CacheMetrics.BULKHEAD_REJECT);
+                    throw new CacheBusyException(keyPrefix);
+                }
+                long begin = System.currentTimeMillis();
+                try {
+                    return dbFallback.apply(id);
+                } finally {
+                    dbBulkhead.release(keyPrefix);
+                    metrics.record(keyPrefix, CacheMetrics.PASS_THROUGH, CacheMetrics.DB_FALLBACK,
+                            System.currentTimeMillis() - begin);
+                }
+            }, dbExecutor);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(new CacheBusyException(keyPrefix));
+            return future;
+        }
+    }
+
+    //回写redis，熔断打开时跳过，失败只记录日志
+    private void write(byte[] key, byte[] value, long ttlMillis) {
+        if (!circuitBreaker.allowRequest()) {
+            return;
+        }
+        circuitBreaker.callAsync(() -> commands.psetex(key, ttlMillis, value))
+                .whenComplete((ok, e) -> {
+                    if (e != null) {
+                        log.warn("异步写入redis失败：{}", e.toString());
+                    }
+                });
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("poolSize", dbExecutor.getPoolSize());
+        stats.put("active", dbExecutor.getActiveCount());
+        stats.put("queueDepth", dbExecutor.getQueue().size());
+        stats.put("rejected", rejected.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dbExecutor.shutdown();
+        connection.close();
+        redisClient.shutdown();
+    }
+}
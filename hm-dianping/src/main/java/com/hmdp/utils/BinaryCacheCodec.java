@@ -0,0 +1,367 @@
+package com.hmdp.utils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:基于类结构的紧凑二进制序列化，字段按名称排序后依次写入，不写字段名
+ * 格式：[1][结构哈希][非空位图][各非空字段值]，带逻辑过期时为[2][过期时间毫秒][重建耗时][对象]
+ * 包含不支持类型字段的类自动退回json，读取时也兼容原有json格式的缓存
+ * @Version:java_15
+ */
+public class BinaryCacheCodec implements CacheCodec {
+
+    private static final byte BEAN = 1;
+    private static final byte LOGICAL = 2;
+
+    private static final byte LONG = 1;
+    private static final byte INT = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte FLOAT = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte STRING = 6;
+    private static final byte DATE_TIME = 7;
+
+    private final JsonCacheCodec json = new JsonCacheCodec();
+    //每个类解析一次结构
+    private final Map<Class<?>, Schema> schemas = new ConcurrentHashMap<>();
+
+    @Override
+    public byte[] encode(Object value) {
+        Schema schema = schemas.computeIfAbsent(value.getClass(), Schema::of);
+        if (!schema.supported) {
+            return json.encode(value);
+        }
+        Output out = new Output(128);
+        out.writeByte(BEAN);
+        writeBean(out, schema, value);
+        return out.toByteArray();
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        if (bytes[0] != BEAN) {
+            return json.decode(bytes, type);
+        }
+        Input in = new Input(bytes, 1);
+        return readBean(in, type);
+    }
+
+    @Override
+    public byte[] encodeLogical(RedisData redisData) {
+        Object data = redisData.getData();
+        //数据库中已删除的记录data为null，交给json格式保存
+        if (data == null) {
+            return json.encodeLogical(redisData);
+        }
+        Schema schema = schemas.computeIfAbsent(data.getClass(), Schema::of);
+        if (!schema.supported) {
+            return json.encodeLogical(redisData);
+        }
+        Output out = new Output(128);
+        out.writeByte(LOGICAL);
+        out.writeVarLong(toMillis(redisData.getExpireTime()));
+        out.writeVarLong(redisData.getRebuildCost() == null ? 0 : redisData.getRebuildCost());
+        writeBean(out, schema, data);
+        return out.toByteArray();
+    }
+
+    @Override
+    public <T> RedisData decodeLogical(byte[] bytes, Class<T> type) {
+        if (bytes[0] != LOGICAL) {
+            return json.decodeLogical(bytes, type);
+        }
+        Input in = new Input(bytes, 1);
+        RedisData redisData = new RedisData();
+        redisData.setExpireTime(fromMillis(in.readVarLong()));
+        redisData.setRebuildCost(in.readVarLong());
+        redisData.setData(readBean(in, type));
+        return redisData;
+    }
+
+    private void writeBean(Output out, Schema schema, Object value) {
+        try {
+            out.writeInt(schema.hash);
+            //1.非空位图
+            Object[] values = new Object[schema.fields.length];
+            byte[] bitmap = new byte[(schema.fields.length + 7) >>> 3];
+            for (int i = 0; i < schema.fields.length; i++) {
+                values[i] = schema.fields[i].get(value);
+                if (values[i] != null) {
+                    bitmap[i >>> 3] |= 1 << (i & 7);
+                }
+            }
+            out.writeBytes(bitmap);
+            //2.依次写入非空字段
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    writeValue(out, schema.kinds[i], values[i]);
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private <T> T readBean(Input in, Class<T> type) {
+        Schema schema = schemas.computeIfAbsent(type, Schema::of);
+        if (in.readInt() != schema.hash) {
+            throw new IllegalStateException("缓存数据结构与类型不一致：" + type.getName());
+        }
+        try {
+            T bean = type.getDeclaredConstructor().newInstance();
+            byte[] bitmap = in.readBytes((schema.fields.length + 7) >>> 3);
+            for (int i = 0; i < schema.fields.length; i++) {
+                if ((bitmap[i >>> 3] & (1 << (i & 7))) != 0) {
+                    schema.fields[i].set(bean, readValue(in, schema.kinds[i]));
+                }
+            }
+            return bean;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeValue(Output out, byte kind, Object value) {
+        switch (kind) {
+            case LONG:
+                out.writeVarLong((Long) value);
+                break;
+            case INT:
+                out.writeVarLong((Integer) value);
+                break;
+            case DOUBLE:
+                out.writeLong(Double.doubleToRawLongBits((Double) value));
+                break;
+            case FLOAT:
+                out.writeInt(Float.floatToRawIntBits((Float) value));
+                break;
+            case BOOLEAN:
+                out.writeByte((Boolean) value ? 1 : 0);
+                break;
+            case STRING:
+                byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+                out.writeVarLong(bytes.length);
+                out.writeBytes(bytes);
+                break;
+            default:
+                out.writeVarLong(toMillis((LocalDateTime) value));
+        }
+    }
+
+    private static Object readValue(Input in, byte kind) {
+        switch (kind) {
+            case LONG:
+                return in.readVarLong();
+            case INT:
+                return (int) in.readVarLong();
+            case DOUBLE:
+                return Double.longBitsToDouble(in.readLong());
+            case FLOAT:
+                return Float.intBitsToFloat(in.readInt());
+            case BOOLEAN:
+                return in.readByte() != 0;
+            case STRING:
+                int length = (int) in.readVarLong();
+                return new String(in.readBytes(length), StandardCharsets.UTF_8);
+            default:
+                return fromMillis(in.readVarLong());
+        }
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime fromMillis(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+
+    //类结构：参与序列化的字段、字段类型以及用于校验的结构哈希
+    private static class Schema {
+        private final Field[] fields;
+        private final byte[] kinds;
+        private final int hash;
+        private final boolean supported;
+
+        private Schema(Field[] fields, byte[] kinds, boolean supported) {
+            this.fields = fields;
+            this.kinds = kinds;
+            this.supported = supported;
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < fields.length; i++) {
+                sb.append(fields[i].getName()).append(':').append(kinds[i]).append(';');
+            }
+            this.hash = sb.toString().hashCode();
+        }
+
+        private static Schema of(Class<?> type) {
+            //jdk自带类型(String、Long、集合等)和数组交给json处理
+            if (type.isArray() || type.getName().startsWith("java.")) {
+                return new Schema(new Field[0], new byte[0], false);
+            }
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                        fields.add(field);
+                    }
+                }
+            }
+            fields.sort(Comparator.comparing(Field::getName));
+            Field[] array = fields.toArray(new Field[0]);
+            byte[] kinds = new byte[array.length];
+            boolean supported = true;
+            for (int i = 0; i < array.length; i++) {
+                kinds[i] = kindOf(array[i].getType());
+                //基本类型字段无法表示null，同样交给json
+                if (kinds[i] == 0 || array[i].getType().isPrimitive()) {
+                    supported = false;
+                }
+                array[i].setAccessible(true);
+            }
+            return supported ? new Schema(array, kinds, true) : new Schema(new Field[0], new byte[0], false);
+        }
+
+        private static byte kindOf(Class<?> type) {
+            if (type == Long.class) {
+                return LONG;
+            }
+            if (type == Integer.class) {
+                return INT;
+            }
+            if (type == Double.class) {
+                return DOUBLE;
+            }
+            if (type == Float.class) {
+                return FLOAT;
+            }
+            if (type == Boolean.class) {
+                return BOOLEAN;
+            }
+            if (type == String.class) {
+                return STRING;
+            }
+            if (type == LocalDateTime.class) {
+                return DATE_TIME;
+            }
+            return 0;
+        }
+    }
+
+    //可扩容的写缓冲区，整数使用zigzag变长编码
+    private static class Output {
+        private byte[] buf;
+        private int pos;
+
+        private Output(int capacity) {
+            this.buf = new byte[capacity];
+        }
+
+        private void ensure(int n) {
+            if (pos + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + n));
+            }
+        }
+
+        private void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        private void writeBytes(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        private void writeInt(int v) {
+            ensure(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                buf[pos++] = (byte) (v >>> shift);
+            }
+        }
+
+        private void writeLong(long v) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[pos++] = (byte) (v >>> shift);
+            }
+        }
+
+        private void writeVarLong(long v) {
+            long zigzag = (v << 1) ^ (v >> 63);
+            ensure(10);
+            while ((zigzag & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buf[pos++] = (byte) zigzag;
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    private static class Input {
+        private final byte[] buf;
+        private int pos;
+
+        private Input(byte[] buf, int pos) {
+            this.buf = buf;
+            this.pos = pos;
+        }
+
+        private byte readByte() {
+            return buf[pos++];
+        }
+
+        private byte[] readBytes(int n) {
+            byte[] bytes = Arrays.copyOfRange(buf, pos, pos + n);
+            pos += n;
+            return bytes;
+        }
+
+        private int readInt() {
+            int v = 0;
+            for (int i = 0; i < 4; i++) {
+                v = (v << 8) | (buf[pos++] & 0xFF);
+            }
+            return v;
+        }
+
+        private long readLong() {
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v = (v << 8) | (buf[pos++] & 0xFF);
+            }
+            return v;
+        }
+
+        private long readVarLong() {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buf[pos++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+    }
+}
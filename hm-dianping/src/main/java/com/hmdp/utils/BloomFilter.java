@@ -0,0 +1,138 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:进程内布隆过滤器，用于在访问redis和数据库之前拦截一定不存在的id
+ * @Version:java_15
+ */
+public class BloomFilter {
+    //位数组
+    private final AtomicLongArray bits;
+    //位数组长度
+    private final long bitSize;
+    //哈希函数个数
+    private final int numHashFunctions;
+    //已写入的元素个数(近似值)
+    private final LongAdder insertions = new LongAdder();
+    //被拦截的查询次数
+    private final LongAdder rejections = new LongAdder();
+    //预计元素个数
+    private final long expectedInsertions;
+    //是否已经提交了按实际个数重建
+    private final AtomicBoolean resizing = new AtomicBoolean();
+
+    /**
+     * @param expectedInsertions 预计元素个数
+     * @param fpp                期望误判率
+     */
+    public BloomFilter(long expectedInsertions, double fpp) {
+        long n = Math.max(expectedInsertions, 1);
+        this.expectedInsertions = n;
+        //m = -n*ln(p)/(ln2)^2，k = m/n*ln2
+        long m = (long) (-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.bits = new AtomicLongArray((int) ((m + 63) >>> 6));
+        this.bitSize = (long) bits.length() << 6;
+        this.numHashFunctions = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+    }
+
+    public void put(Object id) {
+        long[] hash = hash(id);
+        long combined = hash[0];
+        boolean changed = false;
+        for (int i = 0; i < numHashFunctions; i++) {
+            changed |= setBit((combined & Long.MAX_VALUE) % bitSize);
+            combined += hash[1];
+        }
+        //没有新置位说明元素已存在(或误判)，重复写入不计数
+        if (changed) {
+            insertions.increment();
+        }
+    }
+
+    public boolean mightContain(Object id) {
+        long[] hash = hash(id);
+        long combined = hash[0];
+        for (int i = 0; i < numHashFunctions; i++) {
+            if (!getBit((combined & Long.MAX_VALUE) % bitSize)) {
+                rejections.increment();
+                return false;
+            }
+            combined += hash[1];
+        }
+        return true;
+    }
+
+    /**
+     * 写入个数超过预计元素个数，误判率已高于期望值
+     */
+    public boolean isSaturated() {
+        return insertions.sum() > expectedInsertions;
+    }
+
+    /**
+     * 标记需要重建，只有第一次调用返回true
+     */
+    public boolean markResizing() {
+        return resizing.compareAndSet(false, true);
+    }
+
+    /**
+     * 根据当前置位比例估算的误判率：(置位数/位数)^k
+     */
+    public double expectedFpp() {
+        return Math.pow((double) bitCount() / bitSize, numHashFunctions);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("bitSize", bitSize);
+        stats.put("numHashFunctions", numHashFunctions);
+        stats.put("memoryBytes", bitSize >>> 3);
+        stats.put("expectedInsertions", expectedInsertions);
+        stats.put("insertions", insertions.sum());
+        stats.put("rejections", rejections.sum());
+        stats.put("expectedFpp", expectedFpp());
+        return stats;
+    }
+
+    private long bitCount() {
+        long count = 0;
+        for (int i = 0; i < bits.length(); i++) {
+            count += Long.bitCount(bits.get(i));
+        }
+        return count;
+    }
+
+    //返回是否由本次调用置位
+    private boolean setBit(long index) {
+        int word = (int) (index >>> 6);
+        long mask = 1L << index;
+        long old;
+        do {
+            old = bits.get(word);
+            if ((old & mask) != 0) {
+                return false;
+            }
+        } while (!bits.compareAndSet(word, old, old | mask));
+        return true;
+    }
+
+    private boolean getBit(long index) {
+        return (bits.get((int) (index >>> 6)) & (1L << index)) != 0;
+    }
+
+    //murmur128的两个64位结果做组合哈希，避免计算k次哈希
+    private static long[] hash(Object id) {
+        return MurmurHash.hash128(String.valueOf(id).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,126 @@
+package com.hmdp.utils;
+
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:处理@Cached和@CacheEvict，把被注解的方法作为dbFallback交给CacheClient
+ * @Version:java_15
+ */
+@Aspect
+@Component
+public class CacheAspect {
+
+    private final SpelExpressionParser parser = new SpelExpressionParser();
+    private final ParameterNameDiscoverer nameDiscoverer = new DefaultParameterNameDiscoverer();
+    private final Map<String, Expression> expressions = new ConcurrentHashMap<>();
+
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private CacheInvalidator cacheInvalidator;
+
+    @Around("@annotation(cached)")
+    @SuppressWarnings("unchecked")
+    public Object around(ProceedingJoinPoint joinPoint, Cached cached) throws Throwable {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        Object id = evaluate(cached.key(), method, joinPoint.getArgs());
+        //1.List按元素类型的数组缓存，保证反序列化后元素类型正确
+        Class<?> elementType = listElementType(method);
+        Class<Object> type = (Class<Object>) (elementType == null
+                ? method.getReturnType() : Array.newInstance(elementType, 0).getClass());
+        //2.被注解的方法就是查询数据库的逻辑
+        Function<Object, Object> dbFallback = ignored -> {
+            Object result = proceed(joinPoint);
+            return elementType == null || result == null ? result : toArray((List<?>) result, elementType);
+        };
+        Object result;
+        try {
+            switch (cached.strategy()) {
+                case MUTEX:
+                    result = cacheClient.queryWithMutex(cached.prefix(), id, type, dbFallback, cached.ttl(), cached.unit());
+                    break;
+                case LOGICAL_EXPIRE:
+                    result = cacheClient.queryWithLogicalExpire(cached.prefix(), id, type, dbFallback, cached.ttl(), cached.unit());
+                    break;
+                default:
+                    result = cacheClient.queryWithPassThrough(cached.prefix(), id, type, dbFallback, cached.ttl(), cached.unit());
+            }
+        } catch (UndeclaredThrowableException e) {
+            //还原方法本身抛出的受检异常
+            throw e.getUndeclaredThrowable();
+        }
+        //3.返回新的List，数组本身可能被本地缓存共享
+        return elementType == null || result == null ? result : new ArrayList<>(Arrays.asList((Object[]) result));
+    }
+
+    @AfterReturning("@annotation(cacheEvict)")
+    public void evict(JoinPoint joinPoint, CacheEvict cacheEvict) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        Object id = evaluate(cacheEvict.key(), method, joinPoint.getArgs());
+        cacheInvalidator.invalidate(cacheEvict.prefix() + id);
+    }
+
+    private Object evaluate(String key, Method method, Object[] args) {
+        Expression expression = expressions.computeIfAbsent(key, parser::parseExpression);
+        return expression.getValue(new MethodBasedEvaluationContext(null, method, args, nameDiscoverer));
+    }
+
+    private static Object proceed(ProceedingJoinPoint joinPoint) {
+        try {
+            return joinPoint.proceed();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+
+    //返回List<T>的方法返回T，否则返回null
+    private static Class<?> listElementType(Method method) {
+        if (!List.class.isAssignableFrom(method.getReturnType())) {
+            return null;
+        }
+        Type type = method.getGenericReturnType();
+        if (type instanceof ParameterizedType) {
+            Type argument = ((ParameterizedType) type).getActualTypeArguments()[0];
+            if (argument instanceof Class) {
+                return (Class<?>) argument;
+            }
+        }
+        throw new IllegalStateException("@Cached方法的List返回值需要声明具体的元素类型：" + method);
+    }
+
+    private static Object toArray(List<?> list, Class<?> elementType) {
+        Object array = Array.newInstance(elementType, list.size());
+        for (int i = 0; i < list.size(); i++) {
+            Array.set(array, i, list.get(i));
+        }
+        return array;
+    }
+}
@@ -0,0 +1,14 @@
+package com.hmdp.utils;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:某个key前缀回源数据库的并发已满，且没有可以返回的旧数据
+ * @Version:java_15
+ */
+public class CacheBusyException extends RuntimeException {
+
+    public CacheBusyException(String keyPrefix) {
+        super("数据库回源并发已满，prefix=" + keyPrefix);
+    }
+}
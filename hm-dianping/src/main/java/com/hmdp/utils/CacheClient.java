@@ -1,20 +1,47 @@
 package com.hmdp.utils;
 
+import cn.hutool.cache.Cache;
+import cn.hutool.cache.CacheUtil;
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
-import com.hmdp.entity.Shop;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 
@@ -29,49 +56,373 @@ import static com.hmdp.utils.RedisConstants.*;
 public class CacheClient {
 
     private final StringRedisTemplate stringRedisTemplate;
+    //缓存值按字节读写，序列化方式由codec决定
+    private final RedisTemplate<String, byte[]> cacheRedisTemplate;
+    private final CacheCodec codec;
+    private final CacheMetrics metrics;
+    //所有异步重建共用的有界调度器
+    private final RebuildScheduler rebuildScheduler;
+    private final HotKeyDetector hotKeyDetector;
+    private final DbBulkhead dbBulkhead;
+    private final RedisCircuitBreaker circuitBreaker;
+    private final AdaptiveTtlPolicy ttlPolicy;
+    //有效期随机延长的比例
+    private final double ttlJitter;
 
-    public CacheClient(StringRedisTemplate stringRedisTemplate) {
+    //本地一级缓存，存放反序列化后的热点对象，命中时不走网络也不用重新解析json，只有热点key会被写入
+    private final Cache<String, Object> localCache =
+            CacheUtil.newLRUCache(CACHE_LOCAL_CAPACITY, TimeUnit.SECONDS.toMillis(CACHE_LOCAL_TTL));
+    //本地缓存空值的占位对象
+    private static final Object NULL_VALUE = new Object();
+    //redis中缓存空值
+    private static final byte[] EMPTY = new byte[0];
+    //redis不可用时的读取结果，只按引用比较
+    private static final byte[] UNAVAILABLE = new byte[0];
+    //按key前缀注册的布隆过滤器
+    private final Map<String, BloomFilter> bloomFilters = new ConcurrentHashMap<>();
+    //重新初始化过滤器的方法，定时或元素个数超过预计容量时执行
+    private final Map<String, Runnable> bloomSeeders = new ConcurrentHashMap<>();
+    //正在初始化的前缀，初始化期间新增的id先暂存，新过滤器生效前补写
+    private final Map<String, List<Object>> bloomPending = new ConcurrentHashMap<>();
+    //重新初始化布隆过滤器的线程
+    private final ScheduledExecutorService bloomExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "bloom-reseed");
+        thread.setDaemon(true);
+        return thread;
+    });
+    //定时重新初始化的间隔(分钟)，补上丢失的新增通知，0表示只在容量不足时重新初始化
+    private final long bloomReseedMinutes;
+    //合并同一个key的并发重建
+    private final SingleFlight singleFlight = new SingleFlight();
+    //hash存储模式的字段转换
+    private final HashCacheMapper hashMapper = new HashCacheMapper();
+    //删除旧key后写入hash的全部字段
+    private static final DefaultRedisScript<Long> HASH_SET_SCRIPT;
+    //版本未变时才写入缓存
+    private static final DefaultRedisScript<Long> CAS_SET_SCRIPT;
+
+    static {
+        HASH_SET_SCRIPT = new DefaultRedisScript<>();
+        HASH_SET_SCRIPT.setLocation(new ClassPathResource("hash_set.lua"));
+        HASH_SET_SCRIPT.setResultType(Long.class);
+        CAS_SET_SCRIPT = new DefaultRedisScript<>();
+        CAS_SET_SCRIPT.setLocation(new ClassPathResource("cas_set.lua"));
+        CAS_SET_SCRIPT.setResultType(Long.class);
+    }
+
+    public CacheClient(StringRedisTemplate stringRedisTemplate, RedisTemplate<String, byte[]> cacheRedisTemplate,
+                       CacheCodec codec, CacheMetrics metrics, RebuildScheduler rebuildScheduler,
+                       HotKeyDetector hotKeyDetector, DbBulkhead dbBulkhead, RedisCircuitBreaker circuitBreaker,
+                       AdaptiveTtlPolicy ttlPolicy, RedisMessageListenerContainer listenerContainer,
+                       @Value("${hmdp.cache.ttl-jitter:0.1}") double ttlJitter,
+                       @Value("${hmdp.cache.bloom.reseed-minutes:60}") long bloomReseedMinutes) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.cacheRedisTemplate = cacheRedisTemplate;
+        this.codec = codec;
+        this.metrics = metrics;
+        this.rebuildScheduler = rebuildScheduler;
+        this.hotKeyDetector = hotKeyDetector;
+        this.dbBulkhead = dbBulkhead;
+        this.circuitBreaker = circuitBreaker;
+        this.ttlPolicy = ttlPolicy;
+        this.ttlJitter = ttlJitter;
+        this.bloomReseedMinutes = bloomReseedMinutes;
+        //订阅失效频道，其他节点删除缓存时同步清理本地缓存
+        listenerContainer.addMessageListener(
+                (message, pattern) -> localCache.remove(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        //订阅布隆过滤器频道，其他节点新增数据时同步写入本地过滤器
+        listenerContainer.addMessageListener(
+                (message, pattern) -> onBloomMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CACHE_BLOOM_CHANNEL));
+    }
+
+    /**
+     * 为某个key前缀注册布隆过滤器，注册后该前缀下不在过滤器中的id直接返回null，不再访问redis和数据库。
+     * 新增通知是不可靠的pub/sub，因此按bloom.reseed-minutes定时用idLoader重新初始化，元素个数超过预计容量时也会重新初始化
+     * @param keyPrefix          key前缀
+     * @param expectedInsertions 预计元素个数
+     * @param fpp                期望误判率
+     * @param idLoader           加载全部已存在id，用于初始化过滤器
+     */
+    public void registerBloomFilter(String keyPrefix, long expectedInsertions, double fpp, Supplier<Collection<?>> idLoader) {
+        Runnable seeder = () -> seedBloomFilter(keyPrefix, expectedInsertions, fpp, idLoader);
+        if (bloomSeeders.put(keyPrefix, seeder) == null && bloomReseedMinutes > 0) {
+            bloomExecutor.scheduleWithFixedDelay(() -> reseedBloomFilter(keyPrefix),
+                    bloomReseedMinutes, bloomReseedMinutes, TimeUnit.MINUTES);
+        }
+        seeder.run();
+    }
+
+    private void seedBloomFilter(String keyPrefix, long expectedInsertions, double fpp, Supplier<Collection<?>> idLoader) {
+        //1.先登记暂存列表再加载id，加载期间收到的新增id不会丢失
+        List<Object> pending = new ArrayList<>();
+        if (bloomPending.putIfAbsent(keyPrefix, pending) != null) {
+            return;
+        }
+        try {
+            Collection<?> ids = idLoader.get();
+            //2.已有数据超过预计容量时按实际个数的两倍分配，留出增长空间
+            BloomFilter bloomFilter = new BloomFilter(Math.max(expectedInsertions, ids.size() * 2L), fpp);
+            for (Object id : ids) {
+                bloomFilter.put(id);
+            }
+            //3.补写暂存的id后再生效，避免初始化期间误拦截
+            synchronized (pending) {
+                for (Object id : pending) {
+                    bloomFilter.put(id);
+                }
+                bloomFilters.put(keyPrefix, bloomFilter);
+                bloomPending.remove(keyPrefix, pending);
+            }
+            log.info("布隆过滤器初始化完成，prefix={}, stats={}", keyPrefix, bloomFilter.stats());
+        } finally {
+            bloomPending.remove(keyPrefix, pending);
+        }
+    }
+
+    //在后台重新初始化，失败时保留旧的过滤器
+    private void reseedBloomFilter(String keyPrefix) {
+        Runnable seeder = bloomSeeders.get(keyPrefix);
+        if (seeder == null) {
+            return;
+        }
+        try {
+            seeder.run();
+        } catch (RuntimeException e) {
+            log.warn("布隆过滤器重新初始化失败，prefix={}：{}", keyPrefix, e.toString());
+        }
+    }
+
+    //新增数据时写入布隆过滤器，并通知其他节点
+    public void addToBloomFilter(String keyPrefix, Object id) {
+        if (!bloomSeeders.containsKey(keyPrefix)) {
+            return;
+        }
+        putBloomFilter(keyPrefix, id);
+        stringRedisTemplate.convertAndSend(CACHE_BLOOM_CHANNEL, keyPrefix + id);
+    }
+
+    public Map<String, Map<String, Object>> bloomFilterStats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        bloomFilters.forEach((prefix, bloomFilter) -> stats.put(prefix, bloomFilter.stats()));
+        return stats;
+    }
+
+    //其他节点的新增通知，按已注册的前缀拆出id，包括还在初始化的前缀
+    private void onBloomMessage(String key) {
+        bloomSeeders.keySet().forEach(prefix -> {
+            if (key.startsWith(prefix)) {
+                putBloomFilter(prefix, key.substring(prefix.length()));
+            }
+        });
+    }
+
+    private void putBloomFilter(String keyPrefix, Object id) {
+        //1.正在初始化时先暂存，新过滤器生效前会补写
+        List<Object> pending = bloomPending.get(keyPrefix);
+        if (pending != null) {
+            synchronized (pending) {
+                if (bloomPending.get(keyPrefix) == pending) {
+                    pending.add(id);
+                }
+            }
+        }
+        //2.写入当前生效的过滤器，暂存列表已补写时这里取到的就是新过滤器
+        BloomFilter bloomFilter = bloomFilters.get(keyPrefix);
+        if (bloomFilter == null) {
+            return;
+        }
+        bloomFilter.put(id);
+        //3.元素个数超过预计容量后误判率快速上升，按实际个数重新初始化
+        if (bloomFilter.isSaturated() && bloomFilter.markResizing()) {
+            bloomExecutor.execute(() -> reseedBloomFilter(keyPrefix));
+        }
+    }
+
+    //未注册过滤器的前缀一律放行
+    private boolean mightContain(String keyPrefix, Object id) {
+        BloomFilter bloomFilter = bloomFilters.get(keyPrefix);
+        return bloomFilter == null || bloomFilter.mightContain(id);
     }
 
     public void set(String key, Object value, Long time, TimeUnit unit) {
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        cacheRedisTemplate.opsForValue().set(key, codec.encode(value), ttlMillis(key, time, unit), TimeUnit.MILLISECONDS);
+    }
+
+    //删除缓存，并通知所有节点清理本地缓存
+    public void delete(String key) {
+        deleteBatch(Collections.singletonList(key));
+    }
+
+    /**
+     * 用一次管道删除多个缓存并发布失效消息，redis操作失败时抛出异常，由调用方决定是否重试。
+     * 删除前先递增每个key的版本号，删除前已经开始的重建在写入时会发现版本变化并放弃写入
+     */
+    public void deleteBatch(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        keys.forEach(key -> {
+            localCache.remove(key);
+            ttlPolicy.onUpdate(key);
+        });
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String key : keys) {
+                conn.incr(key + CACHE_VERSION_SUFFIX);
+                conn.expire(key + CACHE_VERSION_SUFFIX, TimeUnit.HOURS.toSeconds(CACHE_VERSION_TTL));
+            }
+            conn.del(keys.toArray(new String[0]));
+            for (String key : keys) {
+                conn.publish(CACHE_INVALIDATE_CHANNEL, key);
+            }
+            return null;
+        });
     }
 
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
+        cacheRedisTemplate.opsForValue().set(key, toLogicalExpireBytes(value, 0L, ttlMillis(time, unit)));
+    }
+
+    /**
+     * 版本未变时才写入逻辑过期数据
+     * @param version 查询数据库之前通过currentVersion读取的版本
+     * @return 是否写入，false说明期间缓存已被失效
+     */
+    public boolean setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit, String version) {
+        return redisCall(() -> casSet(key, toLogicalExpireBytes(value, 0L, ttlMillis(time, unit)), 0, version));
+    }
+
+    //读取缓存的版本号，从未失效过的key版本为0。从数据库重建缓存时，必须在查询数据库之前读取
+    public String currentVersion(String key) {
+        String version = redisCall(() -> stringRedisTemplate.opsForValue().get(key + CACHE_VERSION_SUFFIX));
+        return version == null ? "0" : version;
+    }
+
+    //批量读取版本号，用于预热等批量重建，同样必须在查询数据库之前读取
+    public <ID> Map<ID, String> currentVersions(String keyPrefix, Collection<ID> ids) {
+        List<String> keys = ids.stream().map(id -> keyPrefix + id + CACHE_VERSION_SUFFIX).collect(Collectors.toList());
+        List<String> values = redisCall(() -> stringRedisTemplate.opsForValue().multiGet(keys));
+        Map<ID, String> versions = new HashMap<>(ids.size());
+        int i = 0;
+        for (ID id : ids) {
+            String version = values == null ? null : values.get(i);
+            versions.put(id, version == null ? "0" : version);
+            i++;
+        }
+        return versions;
+    }
+
+    //ttlMillis为0时不设置过期时间，只在redisWrite或redisCall中调用
+    private boolean casSet(String key, byte[] value, long ttlMillis, String version) {
+        Long result = cacheRedisTemplate.execute(CAS_SET_SCRIPT, Arrays.asList(key, key + CACHE_VERSION_SUFFIX),
+                version.getBytes(StandardCharsets.UTF_8), value,
+                String.valueOf(ttlMillis).getBytes(StandardCharsets.UTF_8));
+        return result != null && result == 1;
+    }
+
+    /**
+     * 用管道批量写入逻辑过期数据，每个key的版本未变时才写入，用于缓存预热
+     * @param versions 查询数据库之前通过currentVersions读取的版本
+     * @return 写入的个数，其余key在期间已被失效
+     */
+    public <T> int setWithLogicalExpireBatch(String keyPrefix, Collection<T> values, Function<T, ?> idGetter,
+                                             Map<?, String> versions, Long time, TimeUnit unit) {
+        byte[] script = CAS_SET_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+        byte[] ttl = "0".getBytes(StandardCharsets.UTF_8);
+        List<Object> results = redisCall(() -> cacheRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (T value : values) {
+                Object id = idGetter.apply(value);
+                String key = keyPrefix + id;
+                connection.scriptingCommands().eval(script, ReturnType.INTEGER, 2,
+                        key.getBytes(StandardCharsets.UTF_8),
+                        (key + CACHE_VERSION_SUFFIX).getBytes(StandardCharsets.UTF_8),
+                        versions.get(id).getBytes(StandardCharsets.UTF_8),
+                        toLogicalExpireBytes(value, 0L, ttlMillis(time, unit)), ttl);
+            }
+            return null;
+        }));
+        return written(results);
+    }
+
+    //管道中脚本返回1的个数
+    private static int written(List<Object> results) {
+        int written = 0;
+        for (Object result : results) {
+            if (Long.valueOf(1L).equals(result)) {
+                written++;
+            }
+        }
+        return written;
+    }
+
+    //写入带逻辑过期时间和重建耗时的数据，同时设置相同的真实过期时间，不再被访问的key会自然过期
+    public void setWithEarlyRefresh(String key, Object value, long rebuildCost, Long time, TimeUnit unit) {
+        long ttl = ttlMillis(key, time, unit);
+        cacheRedisTemplate.opsForValue().set(key, toLogicalExpireBytes(value, rebuildCost, ttl), ttl, TimeUnit.MILLISECONDS);
+    }
+
+    private byte[] toLogicalExpireBytes(Object value, long rebuildCost, long ttlMillis) {
         //1.set LogicalExpire
         RedisData redisData = new RedisData();
         redisData.setData(value);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
-        //2. writer redis
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        redisData.setExpireTime(LocalDateTime.now().plus(ttlMillis, ChronoUnit.MILLIS));
+        redisData.setRebuildCost(rebuildCost);
+        //2.序列化
+        return codec.encodeLogical(redisData);
     }
 
     //缓存穿透
     public <T, ID> T queryWithPassThrough(
             String keyPrefix, ID id, Class<T> type, Function<ID, T> dbFallback, Long time, TimeUnit unit) {
+        //布隆过滤器判断id一定不存在时直接返回
+        if (!mightContain(keyPrefix, id)) {
+            metrics.increment(keyPrefix, CacheMetrics.PASS_THROUGH, CacheMetrics.BLOOM_REJECT);
+            return null;
+        }
         String key = keyPrefix + id;
+        //0.先查本地缓存
+        Object local = getLocal(key);
+        if (local != null) {
+            metrics.increment(keyPrefix, CacheMetrics.PASS_THROUGH, CacheMetrics.LOCAL_HIT);
+            return local == NULL_VALUE ? null : type.cast(local);
+        }
         //1.从redis查询商铺缓存
-        String Json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = redisGet(key);
+        if (bytes == UNAVAILABLE) {
+            return loadWithoutRedis(keyPrefix, CacheMetrics.PASS_THROUGH, id, dbFallback, false);
+        }
         //2.判断是否存在
-        if (StrUtil.isNotBlank(Json)) {
-            //3.存在，直接退出
-            return JSONUtil.toBean(Json, type);
+        if (bytes != null && bytes.length > 0) {
+            //3.存在，写入本地缓存后退出；无法反序列化时按未命中处理，重新查询数据库覆盖
+            T t = decode(keyPrefix, CacheMetrics.PASS_THROUGH, key, bytes, type);
+            if (t != null) {
+                metrics.increment(keyPrefix, CacheMetrics.PASS_THROUGH, CacheMetrics.HIT);
+                putLocal(key, t, time, unit);
+                return t;
+            }
+            bytes = null;
         }
         //缓存穿透判断""值
-        if (Json != null) {
+        if (bytes != null) {
+            metrics.increment(keyPrefix, CacheMetrics.PASS_THROUGH, CacheMetrics.NULL_HIT);
+            putLocal(key, NULL_VALUE, CACHE_NULL_TTL, TimeUnit.MINUTES);
             return null;
         }
         //4.不存在，根据id查询数据库
-        T t = dbFallback.apply(id);
+        metrics.increment(keyPrefix, CacheMetrics.PASS_THROUGH, CacheMetrics.MISS);
+        T t = loadFromDb(keyPrefix, CacheMetrics.PASS_THROUGH, id, dbFallback);
         //5.不存在，返回错误
         if (t == null) {
             //将null写入redis
-            stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+            metrics.increment(keyPrefix, CacheMetrics.PASS_THROUGH, CacheMetrics.NULL_STORE);
+            redisWrite(() -> cacheRedisTemplate.opsForValue().set(key, EMPTY, CACHE_NULL_TTL, TimeUnit.MINUTES));
             return null;
         }
         //6.存在，写入redis
-        this.set(key, t, time, unit);
+        redisWrite(() -> this.set(key, t, time, unit));
+        putLocal(key, t, time, unit);
         //7.返回
         return t;
     }
@@ -79,109 +430,892 @@ public class CacheClient {
     //互斥锁解决缓存击穿
     public <T, ID> T queryWithMutex(
             String keyPrefix, ID id, Class<T> type, Function<ID, T> dbFallback, Long time, TimeUnit unit) {
+        //布隆过滤器判断id一定不存在时直接返回
+        if (!mightContain(keyPrefix, id)) {
+            metrics.increment(keyPrefix, CacheMetrics.MUTEX, CacheMetrics.BLOOM_REJECT);
+            return null;
+        }
         String key = keyPrefix + id;
+        //0.先查本地缓存
+        Object local = getLocal(key);
+        if (local != null) {
+            metrics.increment(keyPrefix, CacheMetrics.MUTEX, CacheMetrics.LOCAL_HIT);
+            return local == NULL_VALUE ? null : type.cast(local);
+        }
         //1.从redis查询商铺缓存
-        String Json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = redisGet(key);
+        if (bytes == UNAVAILABLE) {
+            return loadWithoutRedis(keyPrefix, CacheMetrics.MUTEX, id, dbFallback, false);
+        }
         //2.判断是否存在
-        if (StrUtil.isNotBlank(Json)) {
-            //3.存在，直接退出
-            return JSONUtil.toBean(Json, type);
+        if (bytes != null && bytes.length > 0) {
+            //3.存在，写入本地缓存后退出；无法反序列化时按未命中处理，重新查询数据库覆盖
+            T t = decode(keyPrefix, CacheMetrics.MUTEX, key, bytes, type);
+            if (t != null) {
+                metrics.increment(keyPrefix, CacheMetrics.MUTEX, CacheMetrics.HIT);
+                putLocal(key, t, time, unit);
+                return t;
+            }
+            bytes = null;
         }
         //判断命中的是否是空值
-        if (Json != null) {
+        if (bytes != null) {
             //返回null
+            metrics.increment(keyPrefix, CacheMetrics.MUTEX, CacheMetrics.NULL_HIT);
+            putLocal(key, NULL_VALUE, CACHE_NULL_TTL, TimeUnit.MINUTES);
             return null;
         }
-        //4.实现缓存重建
-        //4.1实现互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
-        T t = null;
+        //4.缓存未命中，同一个JVM内相同key只由一个线程重建，其余线程直接等待它的结果
+        metrics.increment(keyPrefix, CacheMetrics.MUTEX, CacheMetrics.MISS);
+        return singleFlight.execute(key, () -> rebuildWithMutex(keyPrefix, id, type, dbFallback, time, unit));
+    }
+
+    private <T, ID> T rebuildWithMutex(
+            String keyPrefix, ID id, Class<T> type, Function<ID, T> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        //4.1实现互斥锁，每个节点每个key只会执行一次SETNX
+        String lockKey = CACHE_LOCK_KEY + key;
+        boolean isLock = tryLock(lockKey);
+        long begin = System.currentTimeMillis();
         try {
-            boolean isLock = tryLock(lockKey);
+            //4.2再次检查redis，其他节点可能已经重建完成
+            byte[] bytes = redisGet(key);
+            //redis不可用时按未命中处理，后续写入会被跳过
+            if (bytes == UNAVAILABLE) {
+                bytes = null;
+            }
+            if (bytes != null && bytes.length > 0) {
+                T t = decode(keyPrefix, CacheMetrics.MUTEX, key, bytes, type);
+                if (t != null) {
+                    putLocal(key, t, time, unit);
+                    return t;
+                }
+                bytes = null;
+            }
+            if (bytes != null) {
+                return null;
+            }
+            //4.3查询数据库，未获取到锁说明其他节点正在重建，本节点只查询一次数据库，不写缓存也不休眠重试
+            T t = loadFromDb(keyPrefix, CacheMetrics.MUTEX, id, dbFallback);
             if (!isLock) {
-                //未获取到锁，休眠
-                Thread.sleep(50);
-                //重新获取
-                return queryWithMutex(keyPrefix, id, type, dbFallback, time, unit);
-            }
-            //获取到锁，从数据库查询重建缓存
-            t = dbFallback.apply(id);
-            //模拟延迟
-            Thread.sleep(200);
+                return t;
+            }
             //5.不存在，返回错误
             if (t == null) {
                 //将null写入redis
-                stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+                redisWrite(() -> cacheRedisTemplate.opsForValue().set(key, EMPTY, CACHE_NULL_TTL, TimeUnit.MINUTES));
+                putLocal(key, NULL_VALUE, CACHE_NULL_TTL, TimeUnit.MINUTES);
                 return null;
             }
             //6.存在，写入redis
-            this.set(key, t, time, unit);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+            redisWrite(() -> this.set(key, t, time, unit));
+            putLocal(key, t, time, unit);
+            return t;
         } finally {
-            //7.1释放互斥锁
-            unLock(lockKey);
+            //7.释放互斥锁
+            if (isLock) {
+                unLock(lockKey);
+                metrics.record(keyPrefix, CacheMetrics.MUTEX, CacheMetrics.REBUILD, System.currentTimeMillis() - begin);
+            }
         }
-        //7.2返回
-        return t;
     }
 
-    //创建线程池
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    /**
+     * 批量查询，缓存格式与queryWithPassThrough一致
+     * @param ids             要查询的id，返回结果保持该顺序，不存在的id被跳过
+     * @param batchDbFallback 一次性查询未命中id的数据库方法，例如listByIds
+     * @param idGetter        从实体中取出id，用于把数据库结果对应回id
+     */
+    public <T, ID> List<T> queryBatch(
+            String keyPrefix, List<ID> ids, Class<T> type, Function<Collection<ID>, List<T>> batchDbFallback,
+            Function<T, ID> idGetter, Long time, TimeUnit unit) {
+        return queryBatch(keyPrefix, ids, type, batchDbFallback, idGetter, time, unit, false);
+    }
+
+    /**
+     * 批量查询，缓存格式与queryWithLogicalExpire一致。列表场景允许返回逻辑过期的数据，过期数据的重建交给单条查询
+     */
+    public <T, ID> List<T> queryBatchWithLogicalExpire(
+            String keyPrefix, List<ID> ids, Class<T> type, Function<Collection<ID>, List<T>> batchDbFallback,
+            Function<T, ID> idGetter, Long time, TimeUnit unit) {
+        return queryBatch(keyPrefix, ids, type, batchDbFallback, idGetter, time, unit, true);
+    }
+
+    private <T, ID> List<T> queryBatch(
+            String keyPrefix, List<ID> ids, Class<T> type, Function<Collection<ID>, List<T>> batchDbFallback,
+            Function<T, ID> idGetter, Long time, TimeUnit unit, boolean logicalExpire) {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<ID, T> found = new HashMap<>(ids.size());
+        //1.过滤不存在的id并查本地缓存
+        List<ID> remoteIds = new ArrayList<>(ids.size());
+        List<String> keys = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            if (!mightContain(keyPrefix, id)) {
+                metrics.increment(keyPrefix, CacheMetrics.BATCH, CacheMetrics.BLOOM_REJECT);
+                continue;
+            }
+            String key = keyPrefix + id;
+            Object local = getLocal(key);
+            if (local == NULL_VALUE) {
+                metrics.increment(keyPrefix, CacheMetrics.BATCH, CacheMetrics.LOCAL_HIT);
+                continue;
+            }
+            if (local instanceof RedisData) {
+                RedisData redisData = (RedisData) local;
+                if (redisData.getExpireTime().isAfter(LocalDateTime.now())) {
+                    found.put(id, type.cast(redisData.getData()));
+                    metrics.increment(keyPrefix, CacheMetrics.BATCH, CacheMetrics.LOCAL_HIT);
+                    continue;
+                }
+            } else if (local != null) {
+                found.put(id, type.cast(local));
+                metrics.increment(keyPrefix, CacheMetrics.BATCH, CacheMetrics.LOCAL_HIT);
+                continue;
+            }
+            remoteIds.add(id);
+            keys.add(key);
+        }
+        //2.一次MGET查询redis
+        List<ID> missIds = new ArrayList<>();
+        if (!keys.isEmpty()) {
+            //redis不可用时全部按未命中处理
+            List<byte[]> values = null;
+            if (circuitBreaker.allowRequest()) {
+                try {
+                    values = circuitBreaker.call(() -> cacheRedisTemplate.opsForValue().multiGet(keys));
+                } catch (DataAccessException e) {
+                    log.warn("批量读取redis失败：{}", e.toString());
+                }
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                byte[] bytes = values == null ? null : values.get(i);
+                ID id = remoteIds.get(i);
+                if (bytes == null) {
+                    missIds.add(id);
+                    continue;
+                }
+                //空值，说明数据库中不存在
+                if (bytes.length == 0) {
+                    metrics.increment(keyPrefix, CacheMetrics.BATCH, CacheMetrics.NULL_HIT);
+                    continue;
+                }
+                //无法反序列化时按未命中处理，与其他未命中的id一起查询数据库并覆盖
+                if (logicalExpire) {
+                    RedisData redisData = decodeLogical(keyPrefix, CacheMetrics.BATCH, keys.get(i), bytes, type);
+                    if (redisData == null) {
+                        missIds.add(id);
+                        continue;
+                    }
+                    found.put(id, type.cast(redisData.getData()));
+                    putLocal(keys.get(i), redisData, remainingMillis(redisData), TimeUnit.MILLISECONDS);
+                } else {
+                    T t = decode(keyPrefix, CacheMetrics.BATCH, keys.get(i), bytes, type);
+                    if (t == null) {
+                        missIds.add(id);
+                        continue;
+                    }
+                    found.put(id, t);
+                    putLocal(keys.get(i), t, time, unit);
+                }
+                metrics.increment(keyPrefix, CacheMetrics.BATCH, CacheMetrics.HIT);
+            }
+        }
+        //3.未命中的id一次性查询数据库，并用管道写回redis
+        if (!missIds.isEmpty()) {
+            metrics.increment(keyPrefix, CacheMetrics.BATCH, CacheMetrics.MISS, missIds.size());
+            Map<ID, T> loaded = loadFromDb(keyPrefix, CacheMetrics.BATCH, missIds, batchDbFallback).stream()
+                    .collect(Collectors.toMap(idGetter, Function.identity(), (a, b) -> a));
+            found.putAll(loaded);
+            redisWrite(() -> cacheRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (ID id : missIds) {
+                    byte[] key = (keyPrefix + id).getBytes(StandardCharsets.UTF_8);
+                    T t = loaded.get(id);
+                    if (t == null) {
+                        connection.stringCommands().setEx(key, TimeUnit.MINUTES.toSeconds(CACHE_NULL_TTL), EMPTY);
+                    } else if (logicalExpire) {
+                        connection.stringCommands().set(key, toLogicalExpireBytes(t, 0L, ttlMillis(time, unit)));
+                    } else {
+                        connection.stringCommands().pSetEx(key, ttlMillis(keyPrefix + id, time, unit), codec.encode(t));
+                    }
+                }
+                return null;
+            }));
+        }
+        //4.按传入的id顺序返回
+        return ids.stream().map(found::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
 
     //逻辑过期解决缓存击穿
     public <T, ID> T queryWithLogicalExpire(
             String keyPrefix, ID id, Class<T> type, Function<ID, T> dbFallback, Long time, TimeUnit unit) {
+        //布隆过滤器判断id一定不存在时直接返回
+        if (!mightContain(keyPrefix, id)) {
+            metrics.increment(keyPrefix, CacheMetrics.LOGICAL_EXPIRE, CacheMetrics.BLOOM_REJECT);
+            return null;
+        }
         String key = keyPrefix + id;
+        //0.先查本地缓存，本地缓存中存放的是已经反序列化的RedisData，逻辑未过期直接返回
+        Object local = getLocal(key);
+        if (local instanceof RedisData && ((RedisData) local).getExpireTime().isAfter(LocalDateTime.now())) {
+            metrics.increment(keyPrefix, CacheMetrics.LOGICAL_EXPIRE, CacheMetrics.LOCAL_HIT);
+            return type.cast(((RedisData) local).getData());
+        }
         //1.从redis查询商铺缓存
-        String Json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = redisGet(key);
+        if (bytes == UNAVAILABLE) {
+            return loadWithoutRedis(keyPrefix, CacheMetrics.LOGICAL_EXPIRE, id, dbFallback, true);
+        }
         //2.判断是否存在
-        if (StrUtil.isBlank(Json)) {
+        if (bytes == null || bytes.length == 0) {
             //3.存在，直接退出
+            metrics.increment(keyPrefix, CacheMetrics.LOGICAL_EXPIRE, CacheMetrics.MISS);
             return null;
         }
-        //4.命中需要把json反序列化为对象
-        RedisData redisData = JSONUtil.toBean(Json, RedisData.class);
-        T t = JSONUtil.toBean((JSONObject) redisData.getData(), type);
+        //4.命中需要反序列化为对象，codec一次解析出过期时间和目标类型
+        RedisData redisData = decodeLogical(keyPrefix, CacheMetrics.LOGICAL_EXPIRE, key, bytes, type);
+        if (redisData == null) {
+            //4.1无法反序列化，本次请求没有旧数据可返回：合并同一个key的并发请求，只查询一次数据库并同步写回redis
+            metrics.increment(keyPrefix, CacheMetrics.LOGICAL_EXPIRE, CacheMetrics.STALE);
+            return singleFlight.execute(key, () -> {
+                //查询数据库前读取版本，期间发生的失效会使版本变化，读取失败时按redis不可用处理
+                String version;
+                try {
+                    version = currentVersion(key);
+                } catch (DataAccessException e) {
+                    return loadWithoutRedis(keyPrefix, CacheMetrics.LOGICAL_EXPIRE, id, dbFallback, true);
+                }
+                long begin = System.currentTimeMillis();
+                T t = loadFromDb(keyPrefix, CacheMetrics.LOGICAL_EXPIRE, id, dbFallback);
+                long cost = System.currentTimeMillis() - begin;
+                redisWrite(() -> {
+                    if (!casSet(key, toLogicalExpireBytes(t, cost, ttlMillis(time, unit)), 0, version)) {
+                        metrics.increment(keyPrefix, CacheMetrics.LOGICAL_EXPIRE, CacheMetrics.VERSION_CONFLICT);
+                    }
+                });
+                return t;
+            });
+        }
+        T t = type.cast(redisData.getData());
         LocalDateTime expireTime = redisData.getExpireTime();
         //5判断是否过期
         if (expireTime.isAfter(LocalDateTime.now())) {
-            //5.1未过期，直接返回店铺信息
+            //5.1未过期，写入本地缓存并直接返回店铺信息
+            metrics.increment(keyPrefix, CacheMetrics.LOGICAL_EXPIRE, CacheMetrics.HIT);
+            putLocal(key, redisData, remainingMillis(redisData), TimeUnit.MILLISECONDS);
             return t;
         }
         //5.2过期，需要重建缓存
+        metrics.increment(keyPrefix, CacheMetrics.LOGICAL_EXPIRE, CacheMetrics.STALE);
         //6重建缓存
+        rebuildLogicalExpire(keyPrefix, id, dbFallback, (t1, cost, version) ->
+                casSet(key, toLogicalExpireBytes(t1, cost, ttlMillis(time, unit)), 0, version));
+        //6.4返回过期的商铺信息
+        return t;
+    }
+
+    //带版本校验的写入，返回是否写入
+    private interface VersionedWriter<T> {
+        boolean write(T t, long cost, String version);
+    }
+
+    /**
+     * 逻辑过期数据的异步重建
+     * @param writer 写入redis的方法，参数为数据库结果、重建耗时和查询数据库前的版本
+     */
+    private <T, ID> void rebuildLogicalExpire(
+            String keyPrefix, ID id, Function<ID, T> dbFallback, VersionedWriter<T> writer) {
+        String key = keyPrefix + id;
         //6.1获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
+        String lockKey = CACHE_LOCK_KEY + key;
         boolean isLock = tryLock(lockKey);
         //6.2判断是否获取成功
-        if (isLock) {
-            //6.3成功，开启线程独立，实现缓存重建
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
+        if (!isLock) {
+            return;
+        }
+        //6.3成功，提交到重建调度器，同一个key已在排队或队列已满时不重复提交，直接释放锁
+        boolean submitted = rebuildScheduler.submit(key, () -> {
+            try {
+                //查询数据库前读取版本，重建期间发生的失效会使版本变化
+                String version = currentVersion(key);
+                //查询数据库，并记录重建耗时
+                long begin = System.currentTimeMillis();
+                T t = loadFromDb(keyPrefix, CacheMetrics.LOGICAL_EXPIRE, id, dbFallback);
+                long cost = System.currentTimeMillis() - begin;
+                //write redis，版本已变化说明数据已被更新，放弃写入旧数据
+                redisWrite(() -> {
+                    if (!writer.write(t, cost, version)) {
+                        metrics.increment(keyPrefix, CacheMetrics.LOGICAL_EXPIRE, CacheMetrics.VERSION_CONFLICT);
+                    }
+                });
+                metrics.record(keyPrefix, CacheMetrics.LOGICAL_EXPIRE, CacheMetrics.REBUILD,
+                        System.currentTimeMillis() - begin);
+            } finally {
+                //释放锁
+                unLock(lockKey);
+            }
+        });
+        if (!submitted) {
+            unLock(lockKey);
+        }
+    }
+
+    //以hash写入逻辑过期数据，过期时间以毫秒时间戳保存，格式见HashCacheMapper
+    public void setWithLogicalExpireHash(String key, Object value, Long time, TimeUnit unit) {
+        setWithLogicalExpireHash(key, value, time, unit, "");
+    }
+
+    /**
+     * 版本未变时才以hash写入逻辑过期数据
+     * @param version 查询数据库之前读取的版本，空字符串表示不校验
+     * @return 是否写入
+     */
+    public boolean setWithLogicalExpireHash(String key, Object value, Long time, TimeUnit unit, String version) {
+        return redisCall(() -> hashSet(key, value, time, unit, version));
+    }
+
+    //只在redisWrite或redisCall中调用
+    private boolean hashSet(String key, Object value, Long time, TimeUnit unit, String version) {
+        Long result = stringRedisTemplate.execute(HASH_SET_SCRIPT, Arrays.asList(key, key + CACHE_VERSION_SUFFIX),
+                (Object[]) hashArgs(value, version, time, unit));
+        return result != null && result == 1;
+    }
+
+    //用管道批量写入hash格式的逻辑过期数据，用于缓存预热
+    public <T> void setWithLogicalExpireHashBatch(
+            String keyPrefix, Collection<T> values, Function<T, ?> idGetter, Long time, TimeUnit unit) {
+        String script = HASH_SET_SCRIPT.getScriptAsString();
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (T value : values) {
+                String key = keyPrefix + idGetter.apply(value);
+                String[] args = hashArgs(value, "", time, unit);
+                String[] keysAndArgs = new String[args.length + 2];
+                keysAndArgs[0] = key;
+                keysAndArgs[1] = key + CACHE_VERSION_SUFFIX;
+                System.arraycopy(args, 0, keysAndArgs, 2, args.length);
+                conn.eval(script, ReturnType.INTEGER, 2, keysAndArgs);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 用管道批量写入hash格式的逻辑过期数据，每个key的版本未变时才写入，用于缓存预热
+     * @param versions 查询数据库之前通过currentVersions读取的版本
+     * @return 写入的个数，其余key在期间已被失效
+     */
+    public <T> int setWithLogicalExpireHashBatch(String keyPrefix, Collection<T> values, Function<T, ?> idGetter,
+                                                 Map<?, String> versions, Long time, TimeUnit unit) {
+        String script = HASH_SET_SCRIPT.getScriptAsString();
+        List<Object> results = redisCall(() -> stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (T value : values) {
+                Object id = idGetter.apply(value);
+                String key = keyPrefix + id;
+                String[] args = hashArgs(value, versions.get(id), time, unit);
+                String[] keysAndArgs = new String[args.length + 2];
+                keysAndArgs[0] = key;
+                keysAndArgs[1] = key + CACHE_VERSION_SUFFIX;
+                System.arraycopy(args, 0, keysAndArgs, 2, args.length);
+                conn.eval(script, ReturnType.INTEGER, 2, keysAndArgs);
+            }
+            return null;
+        }));
+        return written(results);
+    }
+
+    //展开为 版本,字段1,值1,字段2,值2... 作为脚本参数
+    private String[] hashArgs(Object value, String version, Long time, TimeUnit unit) {
+        Map<String, String> hash = hashMapper.toHash(value, System.currentTimeMillis() + ttlMillis(time, unit));
+        String[] args = new String[hash.size() * 2 + 1];
+        args[0] = version;
+        int i = 1;
+        for (Map.Entry<String, String> entry : hash.entrySet()) {
+            args[i++] = entry.getKey();
+            args[i++] = entry.getValue();
+        }
+        return args;
+    }
+
+    /**
+     * 逻辑过期解决缓存击穿，数据以hash保存，流程与queryWithLogicalExpire一致
+     */
+    public <T, ID> T queryWithLogicalExpireHash(
+            String keyPrefix, ID id, Class<T> type, Function<ID, T> dbFallback, Long time, TimeUnit unit) {
+        //布隆过滤器判断id一定不存在时直接返回
+        if (!mightContain(keyPrefix, id)) {
+            metrics.increment(keyPrefix, CacheMetrics.LOGICAL_EXPIRE, CacheMetrics.BLOOM_REJECT);
+            return null;
+        }
+        String key = keyPrefix + id;
+        //0.先查本地缓存
+        Object local = getLocal(key);
+        if (local instanceof RedisData && ((RedisData) local).getExpireTime().isAfter(LocalDateTime.now())) {
+            metrics.increment(keyPrefix, CacheMetrics.LOGICAL_EXPIRE, CacheMetrics.LOCAL_HIT);
+            return type.cast(((RedisData) local).getData());
+        }
+        //1.HGETALL读取整个hash
+        Map<Object, Object> hash = redisEntries(key);
+        if (hash == null) {
+            return loadWithoutRedis(keyPrefix, CacheMetrics.LOGICAL_EXPIRE, id, dbFallback, true);
+        }
+        //2.不存在直接返回
+        if (hash.isEmpty()) {
+            metrics.increment(keyPrefix, CacheMetrics.LOGICAL_EXPIRE, CacheMetrics.MISS);
+            return null;
+        }
+        //3.转换为对象，_expire字段是毫秒时间戳
+        T t = hashMapper.fromHash(hash, type);
+        RedisData redisData = new RedisData();
+        redisData.setData(t);
+        redisData.setExpireTime(fromEpochMilli(HashCacheMapper.expireOf(hash)));
+        //4.未过期，写入本地缓存并直接返回
+        if (redisData.getExpireTime().isAfter(LocalDateTime.now())) {
+            metrics.increment(keyPrefix, CacheMetrics.LOGICAL_EXPIRE, CacheMetrics.HIT);
+            putLocal(key, redisData, remainingMillis(redisData), TimeUnit.MILLISECONDS);
+            return t;
+        }
+        //5.过期，异步重建后返回旧数据，数据库中已删除的记录直接删除缓存
+        metrics.increment(keyPrefix, CacheMetrics.LOGICAL_EXPIRE, CacheMetrics.STALE);
+        rebuildLogicalExpire(keyPrefix, id, dbFallback, (t1, cost, version) -> {
+            if (t1 == null) {
+                stringRedisTemplate.delete(key);
+                return true;
+            }
+            return hashSet(key, t1, time, unit, version);
+        });
+        return t;
+    }
+
+    /**
+     * 列表页批量查询hash缓存，用HMGET只读取fields中的字段，其余字段为null。
+     * 本地缓存和数据库回源得到的是完整对象，直接返回；与queryBatchWithLogicalExpire一样允许返回逻辑过期的数据
+     * @param fields 需要读取的字段名，即实体的属性名
+     */
+    public <T, ID> List<T> queryFieldsBatch(
+            String keyPrefix, List<ID> ids, Class<T> type, Function<Collection<ID>, List<T>> batchDbFallback,
+            Function<T, ID> idGetter, Long time, TimeUnit unit, String... fields) {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<ID, T> found = new HashMap<>(ids.size());
+        //1.过滤不存在的id并查本地缓存
+        List<ID> remoteIds = new ArrayList<>(ids.size());
+        List<String> keys = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            if (!mightContain(keyPrefix, id)) {
+                metrics.increment(keyPrefix, CacheMetrics.BATCH, CacheMetrics.BLOOM_REJECT);
+                continue;
+            }
+            String key = keyPrefix + id;
+            Object local = getLocal(key);
+            if (local instanceof RedisData && ((RedisData) local).getExpireTime().isAfter(LocalDateTime.now())) {
+                found.put(id, type.cast(((RedisData) local).getData()));
+                metrics.increment(keyPrefix, CacheMetrics.BATCH, CacheMetrics.LOCAL_HIT);
+                continue;
+            }
+            remoteIds.add(id);
+            keys.add(key);
+        }
+        //2.管道执行HMGET，额外读取_expire字段，它为null说明key不存在
+        List<ID> missIds = new ArrayList<>();
+        if (!keys.isEmpty()) {
+            String[] hashFields = Arrays.copyOf(fields, fields.length + 1);
+            hashFields[fields.length] = HashCacheMapper.EXPIRE_FIELD;
+            List<Object> rows = null;
+            if (circuitBreaker.allowRequest()) {
                 try {
-                    //查询数据库
-                    T t1 = dbFallback.apply(id);
-                    //write redis
-                    this.setWithLogicalExpire(key, t1, time, unit);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    //释放锁
-                    unLock(lockKey);
+                    rows = circuitBreaker.call(() -> stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                        StringRedisConnection conn = (StringRedisConnection) connection;
+                        for (String key : keys) {
+                            conn.hMGet(key, hashFields);
+                        }
+                        return null;
+                    }));
+                } catch (DataAccessException e) {
+                    log.warn("批量读取redis失败：{}", e.toString());
                 }
-            });
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                List<?> values = rows == null ? null : (List<?>) rows.get(i);
+                if (values == null || values.get(fields.length) == null) {
+                    missIds.add(remoteIds.get(i));
+                    continue;
+                }
+                metrics.increment(keyPrefix, CacheMetrics.BATCH, CacheMetrics.HIT);
+                Map<String, Object> hash = new HashMap<>(hashFields.length);
+                for (int j = 0; j < fields.length; j++) {
+                    hash.put(fields[j], values.get(j));
+                }
+                found.put(remoteIds.get(i), hashMapper.fromHash(hash, type));
+            }
+        }
+        //3.未命中的id一次性查询数据库，并用管道写回完整的hash
+        if (!missIds.isEmpty()) {
+            metrics.increment(keyPrefix, CacheMetrics.BATCH, CacheMetrics.MISS, missIds.size());
+            List<T> loaded = loadFromDb(keyPrefix, CacheMetrics.BATCH, missIds, batchDbFallback);
+            for (T t : loaded) {
+                found.put(idGetter.apply(t), t);
+            }
+            redisWrite(() -> setWithLogicalExpireHashBatch(keyPrefix, loaded, idGetter, time, unit));
+        }
+        //4.按传入的id顺序返回
+        return ids.stream().map(found::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    /**
+     * 概率提前刷新(XFetch)：每次读取时根据重建耗时和剩余有效期判断是否提前异步重建，
+     * 热点key会在过期前被刷新，不再被访问的key到期后直接从redis中过期
+     */
+    public <T, ID> T queryWithEarlyRefresh(
+            String keyPrefix, ID id, Class<T> type, Function<ID, T> dbFallback, Long time, TimeUnit unit) {
+        //布隆过滤器判断id一定不存在时直接返回
+        if (!mightContain(keyPrefix, id)) {
+            metrics.increment(keyPrefix, CacheMetrics.EARLY_REFRESH, CacheMetrics.BLOOM_REJECT);
+            return null;
+        }
+        String key = keyPrefix + id;
+        //0.先查本地缓存
+        Object local = getLocal(key);
+        if (local == NULL_VALUE) {
+            metrics.increment(keyPrefix, CacheMetrics.EARLY_REFRESH, CacheMetrics.LOCAL_HIT);
+            return null;
+        }
+        RedisData redisData;
+        if (local instanceof RedisData && ((RedisData) local).getExpireTime().isAfter(LocalDateTime.now())) {
+            metrics.increment(keyPrefix, CacheMetrics.EARLY_REFRESH, CacheMetrics.LOCAL_HIT);
+            redisData = (RedisData) local;
+        } else {
+            //1.从redis查询
+            byte[] bytes = redisGet(key);
+            if (bytes == UNAVAILABLE) {
+                return loadWithoutRedis(keyPrefix, CacheMetrics.EARLY_REFRESH, id, dbFallback, true);
+            }
+            //2.未命中说明key已经过期或从未加载，同步重建，并发请求合并为一次
+            if (bytes == null) {
+                metrics.increment(keyPrefix, CacheMetrics.EARLY_REFRESH, CacheMetrics.MISS);
+                return singleFlight.execute(key, () -> rebuildWithEarlyRefresh(keyPrefix, id, type, dbFallback, time, unit));
+            }
+            if (bytes.length == 0) {
+                metrics.increment(keyPrefix, CacheMetrics.EARLY_REFRESH, CacheMetrics.NULL_HIT);
+                putLocal(key, NULL_VALUE, CACHE_NULL_TTL, TimeUnit.MINUTES);
+                return null;
+            }
+            redisData = decodeLogical(keyPrefix, CacheMetrics.EARLY_REFRESH, key, bytes, type);
+            //无法反序列化时按未命中处理，同步重建覆盖
+            if (redisData == null) {
+                return singleFlight.execute(key, () -> rebuildWithEarlyRefresh(keyPrefix, id, type, dbFallback, time, unit));
+            }
+            metrics.increment(keyPrefix, CacheMetrics.EARLY_REFRESH, CacheMetrics.HIT);
+            putLocal(key, redisData, remainingMillis(redisData), TimeUnit.MILLISECONDS);
+        }
+        //3.判断是否需要提前刷新
+        if (shouldRefreshEarly(redisData)) {
+            metrics.increment(keyPrefix, CacheMetrics.EARLY_REFRESH, CacheMetrics.STALE);
+            refreshEarly(keyPrefix, id, dbFallback, time, unit);
+        }
+        return type.cast(redisData.getData());
+    }
+
+    private <T, ID> T rebuildWithEarlyRefresh(
+            String keyPrefix, ID id, Class<T> type, Function<ID, T> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        String lockKey = CACHE_LOCK_KEY + key;
+        boolean isLock = tryLock(lockKey);
+        try {
+            //1.再次检查redis，其他节点可能已经重建完成
+            byte[] bytes = redisGet(key);
+            //redis不可用时按未命中处理，后续写入会被跳过
+            if (bytes == UNAVAILABLE) {
+                bytes = null;
+            }
+            if (bytes != null) {
+                if (bytes.length == 0) {
+                    return null;
+                }
+                RedisData redisData = decodeLogical(keyPrefix, CacheMetrics.EARLY_REFRESH, key, bytes, type);
+                if (redisData != null) {
+                    putLocal(key, redisData, remainingMillis(redisData), TimeUnit.MILLISECONDS);
+                    return type.cast(redisData.getData());
+                }
+            }
+            //2.查询数据库并记录耗时，未获取到锁时只返回结果不写缓存
+            long begin = System.currentTimeMillis();
+            T t = loadFromDb(keyPrefix, CacheMetrics.EARLY_REFRESH, id, dbFallback);
+            long cost = System.currentTimeMillis() - begin;
+            if (!isLock) {
+                return t;
+            }
+            if (t == null) {
+                redisWrite(() -> cacheRedisTemplate.opsForValue().set(key, EMPTY, CACHE_NULL_TTL, TimeUnit.MINUTES));
+                putLocal(key, NULL_VALUE, CACHE_NULL_TTL, TimeUnit.MINUTES);
+                return null;
+            }
+            //3.写入redis
+            redisWrite(() -> setWithEarlyRefresh(key, t, cost, time, unit));
+            metrics.record(keyPrefix, CacheMetrics.EARLY_REFRESH, CacheMetrics.REBUILD, System.currentTimeMillis() - begin);
+            return t;
+        } finally {
+            if (isLock) {
+                unLock(lockKey);
+            }
+        }
+    }
+
+    //XFetch判断：now - 重建耗时 * beta * ln(random) >= 过期时间 时刷新，ln(random)为负数
+    private boolean shouldRefreshEarly(RedisData redisData) {
+        long cost = redisData.getRebuildCost() == null ? 0 : redisData.getRebuildCost();
+        double random = 1 - ThreadLocalRandom.current().nextDouble();
+        double gap = -cost * CACHE_XFETCH_BETA * Math.log(random);
+        return System.currentTimeMillis() + gap >= toEpochMilli(redisData.getExpireTime());
+    }
+
+    private <T, ID> void refreshEarly(String keyPrefix, ID id, Function<ID, T> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        String lockKey = CACHE_LOCK_KEY + key;
+        if (!tryLock(lockKey)) {
+            return;
+        }
+        boolean submitted = rebuildScheduler.submit(key, () -> {
+            try {
+                //查询数据库前读取版本，写入时版本已变化则放弃
+                String version = currentVersion(key);
+                long begin = System.currentTimeMillis();
+                T t = loadFromDb(keyPrefix, CacheMetrics.EARLY_REFRESH, id, dbFallback);
+                long cost = System.currentTimeMillis() - begin;
+                long ttl = ttlMillis(key, time, unit);
+                redisWrite(() -> {
+                    boolean written = t == null
+                            ? casSet(key, EMPTY, TimeUnit.MINUTES.toMillis(CACHE_NULL_TTL), version)
+                            : casSet(key, toLogicalExpireBytes(t, cost, ttl), ttl, version);
+                    if (!written) {
+                        metrics.increment(keyPrefix, CacheMetrics.EARLY_REFRESH, CacheMetrics.VERSION_CONFLICT);
+                    }
+                });
+                metrics.record(keyPrefix, CacheMetrics.EARLY_REFRESH, CacheMetrics.REBUILD,
+                        System.currentTimeMillis() - begin);
+            } finally {
+                unLock(lockKey);
+            }
+        });
+        if (!submitted) {
+            unLock(lockKey);
+        }
+    }
+
+    /**
+     * 在舱壁限制内查询数据库，并按前缀和策略记录回源耗时。
+     * 并发已满时抛出CacheBusyException：逻辑过期和提前刷新在异步重建中回源，调用方已经拿到旧数据；
+     * 其余策略没有旧数据可用，直接快速失败
+     */
+    private <T, ID> T loadFromDb(String keyPrefix, String strategy, ID id, Function<ID, T> dbFallback) {
+        if (!dbBulkhead.tryAcquire(keyPrefix)) {
+            metrics.increment(keyPrefix, strategy, CacheMetrics.BULKHEAD_REJECT);
+            throw new CacheBusyException(keyPrefix);
+        }
+        long begin = System.currentTimeMillis();
+        try {
+            return dbFallback.apply(id);
+        } finally {
+            dbBulkhead.release(keyPrefix);
+            metrics.record(keyPrefix, strategy, CacheMetrics.DB_FALLBACK, System.currentTimeMillis() - begin);
+        }
+    }
+
+    //在有效期上增加随机时长，避免同一批写入的key在同一时刻过期
+    private long ttlMillis(Long time, TimeUnit unit) {
+        return jitter(unit.toMillis(time), ttlJitter);
+    }
+
+    //有真实过期时间的写入，先按访问频率调整有效期再增加随机时长
+    private long ttlMillis(String key, Long time, TimeUnit unit) {
+        return jitter(ttlPolicy.ttl(key, unit.toMillis(time)), ttlJitter);
+    }
+
+    /**
+     * 随机延长有效期
+     * @param millis 原有效期
+     * @param ratio  最多延长的比例，0表示不延长
+     */
+    public static long jitter(long millis, double ratio) {
+        if (ratio <= 0) {
+            return millis;
+        }
+        return millis + (long) (ThreadLocalRandom.current().nextDouble() * ratio * millis);
+    }
+
+    private static long remainingMillis(RedisData redisData) {
+        return Math.max(0, toEpochMilli(redisData.getExpireTime()) - System.currentTimeMillis());
+    }
+
+    private static long toEpochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime fromEpochMilli(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    /**
+     * 读取没有经过CacheClient写入的redis数据(如点赞排行)，热点key在本地保留很短的时间，降低单个key对redis的压力
+     * @param key    redis key
+     * @param loader 从redis读取数据的方法
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T queryHotKey(String key, Supplier<T> loader) {
+        Object local = getLocal(key);
+        if (local != null) {
+            return (T) local;
+        }
+        //redis熔断时没有其他数据来源，直接返回null
+        if (!circuitBreaker.allowRequest()) {
+            return null;
+        }
+        T t = circuitBreaker.call(loader);
+        if (t != null) {
+            putLocal(key, t, CACHE_HOT_KEY_LOCAL_TTL, TimeUnit.SECONDS);
         }
-        //6.4返回过期的商铺信息
         return t;
     }
 
+    public List<Map<String, Object>> hotKeys() {
+        return hotKeyDetector.hotKeys();
+    }
+
+    //记录一次访问后读取本地缓存
+    private Object getLocal(String key) {
+        hotKeyDetector.record(key);
+        return localCache.get(key, false);
+    }
+
+    //热点key写入本地缓存，有效期不超过redis中的有效期
+    private void putLocal(String key, Object value, Long time, TimeUnit unit) {
+        //redis熔断期间本地缓存是唯一的缓存，不再要求是热点key
+        if (!hotKeyDetector.isHot(key) && !circuitBreaker.isOpen()) {
+            return;
+        }
+        long timeout = Math.min(unit.toMillis(time), TimeUnit.SECONDS.toMillis(CACHE_LOCAL_TTL));
+        //hutool中timeout<=0表示永不过期，已经到期的数据不写入本地缓存
+        if (timeout > 0) {
+            localCache.put(key, value, timeout);
+        }
+    }
+
     private boolean tryLock(String key) {
-        Boolean setIfAbsent = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
-        return BooleanUtil.isTrue(setIfAbsent);
+        if (!circuitBreaker.allowRequest()) {
+            return false;
+        }
+        try {
+            Boolean setIfAbsent = circuitBreaker.call(
+                    () -> stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS));
+            return BooleanUtil.isTrue(setIfAbsent);
+        } catch (DataAccessException e) {
+            log.warn("获取重建锁失败，key={}：{}", key, e.toString());
+            return false;
+        }
     }
 
     private void unLock(String key) {
-        stringRedisTemplate.delete(key);
+        redisWrite(() -> stringRedisTemplate.delete(key));
+    }
+
+    //读取redis，熔断打开或读取失败时返回UNAVAILABLE
+    private byte[] redisGet(String key) {
+        if (!circuitBreaker.allowRequest()) {
+            return UNAVAILABLE;
+        }
+        try {
+            return circuitBreaker.call(() -> cacheRedisTemplate.opsForValue().get(key));
+        } catch (DataAccessException e) {
+            log.warn("读取redis失败，key={}：{}", key, e.toString());
+            return UNAVAILABLE;
+        }
+    }
+
+    //反序列化缓存值，类型结构已变化或数据损坏时返回null，由调用方按未命中处理
+    private <T> T decode(String keyPrefix, String strategy, String key, byte[] bytes, Class<T> type) {
+        try {
+            return codec.decode(bytes, type);
+        } catch (RuntimeException e) {
+            metrics.increment(keyPrefix, strategy, CacheMetrics.DECODE_ERROR);
+            log.warn("缓存反序列化失败，key={}：{}", key, e.toString());
+            return null;
+        }
     }
 
+    //反序列化逻辑过期数据，失败或过期时间缺失时返回null
+    private RedisData decodeLogical(String keyPrefix, String strategy, String key, byte[] bytes, Class<?> type) {
+        try {
+            RedisData redisData = codec.decodeLogical(bytes, type);
+            if (redisData != null && redisData.getExpireTime() != null) {
+                return redisData;
+            }
+        } catch (RuntimeException e) {
+            log.warn("缓存反序列化失败，key={}：{}", key, e.toString());
+        }
+        metrics.increment(keyPrefix, strategy, CacheMetrics.DECODE_ERROR);
+        return null;
+    }
+
+    //读取整个hash，熔断打开或读取失败时返回null，key不存在时返回空map
+    private Map<Object, Object> redisEntries(String key) {
+        if (!circuitBreaker.allowRequest()) {
+            return null;
+        }
+        try {
+            return circuitBreaker.call(() -> stringRedisTemplate.opsForHash().entries(key));
+        } catch (DataAccessException e) {
+            log.warn("读取redis失败，key={}：{}", key, e.toString());
+            return null;
+        }
+    }
+
+    //访问redis并由熔断器记录结果，熔断打开时抛出RedisConnectionFailureException，与redis连接失败一样由调用方处理
+    private <T> T redisCall(Supplier<T> action) {
+        if (!circuitBreaker.allowRequest()) {
+            throw new RedisConnectionFailureException("redis熔断中");
+        }
+        return circuitBreaker.call(action);
+    }
+
+    //回写redis，熔断打开时跳过，失败只记录日志，数据库结果照常返回
+    private void redisWrite(Runnable write) {
+        if (!circuitBreaker.allowRequest()) {
+            return;
+        }
+        try {
+            circuitBreaker.run(write);
+        } catch (DataAccessException e) {
+            log.warn("写入redis失败：{}", e.toString());
+        }
+    }
+
+    //redis不可用时在舱壁限制内查询数据库，结果只写入本地缓存
+    private <T, ID> T loadWithoutRedis(
+            String keyPrefix, String strategy, ID id, Function<ID, T> dbFallback, boolean logicalExpire) {
+        String key = keyPrefix + id;
+        metrics.increment(keyPrefix, strategy, CacheMetrics.REDIS_UNAVAILABLE);
+        T t = loadFromDb(keyPrefix, strategy, id, dbFallback);
+        if (t == null) {
+            putLocal(key, NULL_VALUE, CACHE_NULL_TTL, TimeUnit.MINUTES);
+            return null;
+        }
+        if (logicalExpire) {
+            //逻辑过期策略的本地缓存存放RedisData
+            RedisData redisData = new RedisData();
+            redisData.setData(t);
+            redisData.setExpireTime(LocalDateTime.now().plusSeconds(CACHE_LOCAL_TTL));
+            putLocal(key, redisData, CACHE_LOCAL_TTL, TimeUnit.SECONDS);
+        } else {
+            putLocal(key, t, CACHE_LOCAL_TTL, TimeUnit.SECONDS);
+        }
+        return t;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        bloomExecutor.shutdownNow();
+    }
 }
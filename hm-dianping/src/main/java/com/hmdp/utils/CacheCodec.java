@@ -0,0 +1,30 @@
+package com.hmdp.utils;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:缓存值的序列化方式，CacheClient通过它读写redis中的字节
+ * @Version:java_15
+ */
+public interface CacheCodec {
+
+    /**
+     * 序列化缓存对象
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 反序列化缓存对象
+     */
+    <T> T decode(byte[] bytes, Class<T> type);
+
+    /**
+     * 序列化带逻辑过期时间的对象
+     */
+    byte[] encodeLogical(RedisData redisData);
+
+    /**
+     * 反序列化带逻辑过期时间的对象，返回的RedisData中data已经是type类型，只需解析一次
+     */
+    <T> RedisData decodeLogical(byte[] bytes, Class<T> type);
+}
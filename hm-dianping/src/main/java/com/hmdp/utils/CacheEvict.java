@@ -0,0 +1,25 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:方法正常返回后删除缓存，在事务中时由CacheInvalidator在提交后删除
+ * @Version:java_15
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CacheEvict {
+
+    //缓存key前缀，与@Cached的prefix一致
+    String prefix();
+
+    //SpEL表达式，可以引用方法参数，如 #id、#shop.id
+    String key();
+}
@@ -0,0 +1,135 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:缓存失效组件。在事务中调用时，删除操作登记到事务提交之后执行，避免提交前被并发读请求用旧数据回填；
+ * 同一事务内的key合并为一次管道DEL。删除失败的key进入重试队列按退避时间重试，可选延迟双删兜底提交后到达的旧数据回填
+ * @Version:java_15
+ */
+@Slf4j
+@Component
+public class CacheInvalidator {
+
+    //事务资源key，同一事务内待删除的key集合
+    private static final Object PENDING_KEYS = new Object();
+
+    @Resource
+    private CacheClient cacheClient;
+    @Value("${hmdp.cache.invalidate.double-delete-delay:500}")
+    private long doubleDeleteDelay;
+    @Value("${hmdp.cache.invalidate.max-retries:5}")
+    private int maxRetries;
+
+    //重试和延迟双删共用的调度线程
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cache-invalidator");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LongAdder deleted = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public void invalidate(String... keys) {
+        invalidate(Arrays.asList(keys));
+    }
+
+    /**
+     * 删除缓存。存在事务时在提交后删除，事务回滚则不删除；不在事务中时立即删除
+     * @param keys 要删除的缓存key
+     */
+    public void invalidate(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        //1.不在事务中，直接删除
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            deleteNow(keys);
+            return;
+        }
+        //2.在事务中，登记到当前事务，提交后统一删除
+        @SuppressWarnings("unchecked")
+        Set<String> pending = (Set<String>) TransactionSynchronizationManager.getResource(PENDING_KEYS);
+        if (pending == null) {
+            Set<String> bound = new LinkedHashSet<>();
+            TransactionSynchronizationManager.bindResource(PENDING_KEYS, bound);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    deleteNow(bound);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(PENDING_KEYS);
+                }
+            });
+            pending = bound;
+        }
+        pending.addAll(keys);
+    }
+
+    private void deleteNow(Collection<String> keys) {
+        Set<String> snapshot = new LinkedHashSet<>(keys);
+        delete(snapshot, 0);
+        //延迟双删：删除后、提交前已读到旧数据的请求可能随后把旧数据写回缓存，延迟一段时间再删一次
+        if (doubleDeleteDelay > 0) {
+            scheduler.schedule(() -> delete(snapshot, 0), doubleDeleteDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void delete(Set<String> keys, int attempt) {
+        try {
+            cacheClient.deleteBatch(keys);
+            deleted.add(keys.size());
+        } catch (Exception e) {
+            failed.increment();
+            //超过重试次数只记录日志，由缓存过期时间兜底
+            if (attempt >= maxRetries) {
+                dropped.add(keys.size());
+                log.error("删除缓存失败，已放弃重试，keys={}", keys, e);
+                return;
+            }
+            long delay = 100L << attempt;
+            log.warn("删除缓存失败，{}ms后第{}次重试，keys={}", delay, attempt + 1, keys);
+            retried.increment();
+            scheduler.schedule(() -> delete(keys, attempt + 1), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("deletedKeys", deleted.sum());
+        stats.put("failedBatches", failed.sum());
+        stats.put("retries", retried.sum());
+        stats.put("droppedKeys", dropped.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+}
@@ -0,0 +1,116 @@
+package com.hmdp.utils;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:缓存指标统计，计数器和耗时直方图都按 key前缀/策略/事件 分组，接口限流按 限流名称/rate_limit/事件 记录在这里
+ * @Version:java_15
+ */
+@Component
+public class CacheMetrics {
+
+    //策略
+    public static final String PASS_THROUGH = "pass_through";
+    public static final String MUTEX = "mutex";
+    public static final String LOGICAL_EXPIRE = "logical_expire";
+    public static final String EARLY_REFRESH = "early_refresh";
+    public static final String BATCH = "batch";
+    public static final String RATE_LIMIT = "rate_limit";
+
+    //事件
+    public static final String LOCAL_HIT = "local_hit";
+    public static final String HIT = "hit";
+    public static final String NULL_HIT = "null_hit";
+    public static final String MISS = "miss";
+    public static final String STALE = "stale";
+    public static final String BLOOM_REJECT = "bloom_reject";
+    public static final String NULL_STORE = "null_store";
+    public static final String DB_FALLBACK = "db_fallback";
+    public static final String REBUILD = "rebuild";
+    public static final String BULKHEAD_REJECT = "bulkhead_reject";
+    public static final String REDIS_UNAVAILABLE = "redis_unavailable";
+    public static final String VERSION_CONFLICT = "version_conflict";
+    public static final String DECODE_ERROR = "decode_error";
+    //限流事件
+    public static final String LIMIT_PASS = "pass";
+    public static final String LOCAL_REJECT = "local_reject";
+    public static final String USER_REJECT = "user_reject";
+    public static final String GLOBAL_REJECT = "global_reject";
+    public static final String REDIS_CHECK = "redis_check";
+
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    public void increment(String keyPrefix, String strategy, String event) {
+        increment(keyPrefix, strategy, event, 1);
+    }
+
+    public void increment(String keyPrefix, String strategy, String event, long delta) {
+        counters.computeIfAbsent(name(keyPrefix, strategy, event), k -> new LongAdder()).add(delta);
+    }
+
+    //记录一次耗时(毫秒)，同时累加该事件的次数
+    public void record(String keyPrefix, String strategy, String event, long millis) {
+        String name = name(keyPrefix, strategy, event);
+        counters.computeIfAbsent(name, k -> new LongAdder()).increment();
+        histograms.computeIfAbsent(name, k -> new Histogram()).record(millis);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new TreeMap<>();
+        counters.forEach((name, counter) -> snapshot.put(name, counter.sum()));
+        histograms.forEach((name, histogram) -> snapshot.put(name + ".latency", histogram.snapshot()));
+        return snapshot;
+    }
+
+    private static String name(String keyPrefix, String strategy, String event) {
+        return keyPrefix + "|" + strategy + "|" + event;
+    }
+
+    //固定桶的耗时直方图，重建调度器也用它统计排队和执行耗时
+    static class Histogram {
+        private static final long[] BUCKETS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+        private final LongAdder[] counts = new LongAdder[BUCKETS.length + 1];
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        Histogram() {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        void record(long millis) {
+            int i = 0;
+            while (i < BUCKETS.length && millis > BUCKETS[i]) {
+                i++;
+            }
+            counts[i].increment();
+            sum.add(millis);
+            max.accumulate(millis);
+        }
+
+        Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                long count = counts[i].sum();
+                total += count;
+                snapshot.put(i < BUCKETS.length ? "le_" + BUCKETS[i] : "le_inf", count);
+            }
+            snapshot.put("count", total);
+            snapshot.put("sumMs", sum.sum());
+            snapshot.put("maxMs", max.get());
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:声明式缓存，由CacheAspect交给CacheClient按指定策略查询，方法本身作为查询数据库的逻辑。
+ * 返回值可以是实体或实体的List，List按数组格式缓存。方法需要通过代理调用，同一个类中的直接调用不会生效
+ * @Version:java_15
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Cached {
+
+    //缓存key前缀，完整key为 prefix + key表达式的值
+    String prefix();
+
+    //SpEL表达式，可以引用方法参数，如 #id、#shop.id
+    String key();
+
+    Strategy strategy() default Strategy.PASS_THROUGH;
+
+    long ttl() default 30L;
+
+    TimeUnit unit() default TimeUnit.MINUTES;
+
+    enum Strategy {
+        //缓存空值防止穿透
+        PASS_THROUGH,
+        //互斥锁重建防止击穿
+        MUTEX,
+        //逻辑过期，数据需要提前预热，未预热的key返回null
+        LOGICAL_EXPIRE
+    }
+}
@@ -0,0 +1,71 @@
+package com.hmdp.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:数据库回源舱壁，每个key前缀同时查询数据库的线程数有上限。
+ * redis被清空或重启时，超出上限的请求短暂等待后直接拒绝，不会在连接池上排队拖垮数据库
+ * @Version:java_15
+ */
+@Component
+public class DbBulkhead {
+
+    private final int maxConcurrent;
+    private final long maxWaitMillis;
+    private final Map<String, Compartment> compartments = new ConcurrentHashMap<>();
+
+    public DbBulkhead(@Value("${hmdp.cache.bulkhead.max-concurrent:20}") int maxConcurrent,
+                      @Value("${hmdp.cache.bulkhead.max-wait-ms:50}") long maxWaitMillis) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    //获取回源许可，超时未获取到返回false
+    public boolean tryAcquire(String keyPrefix) {
+        Compartment compartment = compartments.computeIfAbsent(keyPrefix, k -> new Compartment(maxConcurrent));
+        try {
+            if (compartment.semaphore.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        compartment.rejected.increment();
+        return false;
+    }
+
+    public void release(String keyPrefix) {
+        compartments.get(keyPrefix).semaphore.release();
+    }
+
+    public Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        compartments.forEach((prefix, compartment) -> {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("maxConcurrent", maxConcurrent);
+            item.put("inFlight", maxConcurrent - compartment.semaphore.availablePermits());
+            item.put("rejected", compartment.rejected.sum());
+            stats.put(prefix, item);
+        });
+        return stats;
+    }
+
+    private static class Compartment {
+        private final Semaphore semaphore;
+        private final LongAdder rejected = new LongAdder();
+
+        private Compartment(int permits) {
+            this.semaphore = new Semaphore(permits);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.convert.Convert;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:对象与redis hash之间的转换，每个非空字段对应一个hash字段，时间类型保存为毫秒时间戳，逻辑过期时间保存在_expire字段。
+ * 字段数和字段值都较小时redis用listpack(7.0之前为ziplist)编码hash，比json字符串省去了字段引号、括号和日期文本，
+ * 列表页还可以用HMGET只读取需要的字段。任一字段值超过hash-max-listpack-value(默认64字节)时整个hash会转为hashtable编码
+ * @Version:java_15
+ */
+public class HashCacheMapper {
+
+    public static final String EXPIRE_FIELD = "_expire";
+
+    //每个类解析一次字段
+    private final Map<Class<?>, Map<String, Field>> fields = new ConcurrentHashMap<>();
+
+    /**
+     * 转换为hash，null字段不写入
+     * @param expireMillis 逻辑过期时间的毫秒时间戳
+     */
+    public Map<String, String> toHash(Object value, long expireMillis) {
+        Map<String, String> hash = new LinkedHashMap<>();
+        try {
+            for (Field field : fieldsOf(value.getClass()).values()) {
+                Object v = field.get(value);
+                if (v != null) {
+                    hash.put(field.getName(), write(v));
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        hash.put(EXPIRE_FIELD, String.valueOf(expireMillis));
+        return hash;
+    }
+
+    //按字段名填充对象，hash中没有的字段保持null，HMGET读取部分字段时同样适用
+    public <T> T fromHash(Map<?, ?> hash, Class<T> type) {
+        Map<String, Field> fieldMap = fieldsOf(type);
+        try {
+            T bean = type.getDeclaredConstructor().newInstance();
+            for (Map.Entry<?, ?> entry : hash.entrySet()) {
+                Field field = fieldMap.get(entry.getKey().toString());
+                if (field != null && entry.getValue() != null) {
+                    field.set(bean, read(entry.getValue().toString(), field.getType()));
+                }
+            }
+            return bean;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    //读取逻辑过期时间，没有该字段时返回0，按已过期处理
+    public static long expireOf(Map<?, ?> hash) {
+        Object expire = hash.get(EXPIRE_FIELD);
+        return expire == null ? 0 : Long.parseLong(expire.toString());
+    }
+
+    private Map<String, Field> fieldsOf(Class<?> type) {
+        return fields.computeIfAbsent(type, c -> {
+            Map<String, Field> map = new LinkedHashMap<>();
+            for (Class<?> t = c; t != null && t != Object.class; t = t.getSuperclass()) {
+                for (Field field : t.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                        field.setAccessible(true);
+                        map.putIfAbsent(field.getName(), field);
+                    }
+                }
+            }
+            return map;
+        });
+    }
+
+    private static String write(Object value) {
+        if (value instanceof LocalDateTime) {
+            return String.valueOf(((LocalDateTime) value).toInstant(ZoneOffset.UTC).toEpochMilli());
+        }
+        return value.toString();
+    }
+
+    private static Object read(String value, Class<?> type) {
+        if (type == String.class) {
+            return value;
+        }
+        if (type == LocalDateTime.class) {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(value)), ZoneOffset.UTC);
+        }
+        return Convert.convert(type, value);
+    }
+}
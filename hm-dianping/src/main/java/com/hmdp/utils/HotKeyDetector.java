@@ -0,0 +1,155 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:热点key探测。按采样率记录访问，用滑动窗口内的Count-Min Sketch估算每个key的访问次数，
+ * 估算值达到阈值的key进入容量为K的热点表，窗口滑过后不再达到阈值的key被移出
+ * @Version:java_15
+ */
+@Component
+public class HotKeyDetector {
+
+    //Count-Min Sketch的行数和每行宽度
+    private static final int DEPTH = 4;
+    private static final int WIDTH = 1 << 12;
+    //一个窗口切分成的桶数，每次滑动清空最旧的一个桶
+    private static final int BUCKETS = 5;
+
+    private final double sampleRate;
+    private final long threshold;
+    private final int topK;
+    private final long bucketMillis;
+
+    private final AtomicLongArray[] sketches = new AtomicLongArray[BUCKETS];
+    private volatile long currentBucket;
+    //热点key -> 最近一次估算的访问次数
+    private final Map<String, Long> hotKeys = new ConcurrentHashMap<>();
+
+    public HotKeyDetector(@Value("${hmdp.cache.hot-key.window-seconds:10}") long windowSeconds,
+                          @Value("${hmdp.cache.hot-key.threshold:100}") long threshold,
+                          @Value("${hmdp.cache.hot-key.top-k:100}") int topK,
+                          @Value("${hmdp.cache.hot-key.sample-rate:0.1}") double sampleRate) {
+        this.bucketMillis = Math.max(1, windowSeconds * 1000 / BUCKETS);
+        this.threshold = threshold;
+        this.topK = topK;
+        this.sampleRate = sampleRate;
+        for (int i = 0; i < BUCKETS; i++) {
+            sketches[i] = new AtomicLongArray(DEPTH * WIDTH);
+        }
+        this.currentBucket = System.currentTimeMillis() / bucketMillis;
+    }
+
+    //记录一次访问，返回该key当前是否为热点
+    public boolean record(String key) {
+        rotate();
+        if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return hotKeys.containsKey(key);
+        }
+        //1.写入当前桶
+        AtomicLongArray sketch = sketches[(int) (currentBucket % BUCKETS)];
+        long[] hash = hash(key);
+        for (int i = 0; i < DEPTH; i++) {
+            sketch.incrementAndGet(index(hash, i));
+        }
+        //2.估算窗口内访问次数，达到阈值进入热点表
+        long count = estimate(hash);
+        if (count < threshold) {
+            return hotKeys.containsKey(key);
+        }
+        hotKeys.put(key, count);
+        if (hotKeys.size() > topK) {
+            evictColdest();
+        }
+        return hotKeys.containsKey(key);
+    }
+
+    public boolean isHot(String key) {
+        return hotKeys.containsKey(key);
+    }
+
+    //估算key在窗口内的访问次数
+    public long frequency(String key) {
+        rotate();
+        return estimate(hash(key));
+    }
+
+    //按访问次数从高到低返回热点key
+    public List<Map<String, Object>> hotKeys() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(hotKeys.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        List<Map<String, Object>> result = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Long> entry : entries) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("key", entry.getKey());
+            item.put("count", entry.getValue());
+            result.add(item);
+        }
+        return result;
+    }
+
+    private long estimate(long[] hash) {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            int index = index(hash, i);
+            long sum = 0;
+            for (AtomicLongArray sketch : sketches) {
+                sum += sketch.get(index);
+            }
+            min = Math.min(min, sum);
+        }
+        //按采样率还原成真实访问次数
+        return (long) (min / sampleRate);
+    }
+
+    //时间进入新的桶时清空该桶，并把不再达到阈值的key移出热点表
+    private void rotate() {
+        long bucket = System.currentTimeMillis() / bucketMillis;
+        if (bucket == currentBucket) {
+            return;
+        }
+        synchronized (this) {
+            if (bucket == currentBucket) {
+                return;
+            }
+            //跨过的桶全部清空，最多清空整个窗口
+            for (long b = Math.max(currentBucket + 1, bucket - BUCKETS + 1); b <= bucket; b++) {
+                AtomicLongArray sketch = sketches[(int) (b % BUCKETS)];
+                for (int i = 0; i < sketch.length(); i++) {
+                    sketch.set(i, 0);
+                }
+            }
+            currentBucket = bucket;
+            hotKeys.replaceAll((key, count) -> estimate(hash(key)));
+            hotKeys.values().removeIf(count -> count < threshold);
+        }
+    }
+
+    private void evictColdest() {
+        hotKeys.entrySet().stream()
+                .min(Map.Entry.comparingByValue())
+                .ifPresent(entry -> hotKeys.remove(entry.getKey(), entry.getValue()));
+    }
+
+    private static int index(long[] hash, int row) {
+        long combined = hash[0] + row * hash[1];
+        return row * WIDTH + (int) ((combined & Long.MAX_VALUE) % WIDTH);
+    }
+
+    private static long[] hash(String key) {
+        return MurmurHash.hash128(key.getBytes(StandardCharsets.UTF_8));
+    }
+}
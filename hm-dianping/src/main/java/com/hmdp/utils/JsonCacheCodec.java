@@ -0,0 +1,64 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONArray;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:基于hutool的json序列化，与原有缓存格式兼容
+ * @Version:java_15
+ */
+public class JsonCacheCodec implements CacheCodec {
+
+    @Override
+    public byte[] encode(Object value) {
+        return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        String json = new String(bytes, StandardCharsets.UTF_8);
+        return type.isArray() ? toArray(JSONUtil.parseArray(json), type) : JSONUtil.toBean(json, type);
+    }
+
+    @Override
+    public byte[] encodeLogical(RedisData redisData) {
+        return JSONUtil.toJsonStr(redisData).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <T> RedisData decodeLogical(byte[] bytes, Class<T> type) {
+        //只解析一次json文本，再把data部分直接转换为目标类型
+        JSONObject json = JSONUtil.parseObj(new String(bytes, StandardCharsets.UTF_8));
+        RedisData redisData = new RedisData();
+        redisData.setExpireTime(json.get("expireTime", LocalDateTime.class));
+        redisData.setRebuildCost(json.getLong("rebuildCost"));
+        //data为null时json中没有该字段
+        if (JSONUtil.isNull(json.get("data"))) {
+            return redisData;
+        }
+        if (type.isArray()) {
+            redisData.setData(toArray(json.getJSONArray("data"), type));
+        } else {
+            redisData.setData(json.getJSONObject("data").toBean(type));
+        }
+        return redisData;
+    }
+
+    //列表缓存按数组类型读写，逐个元素转换为数组的元素类型
+    private static <T> T toArray(JSONArray json, Class<T> type) {
+        List<?> list = JSONUtil.toList(json, type.getComponentType());
+        Object array = Array.newInstance(type.getComponentType(), list.size());
+        for (int i = 0; i < list.size(); i++) {
+            Array.set(array, i, list.get(i));
+        }
+        return type.cast(array);
+    }
+}
@@ -0,0 +1,233 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:redis键空间报告。用SCAN逐批遍历全部key，按前缀统计数量，并按采样率对部分key执行MEMORY USAGE和PTTL，
+ * 估算每个前缀的总内存、p99大小和有效期分布。每批之间暂停一段时间，SCAN本身不阻塞redis，
+ * 采样脚本每次只处理一批中被采样的少量key
+ * @Version:java_15
+ */
+@Slf4j
+@Component
+public class KeyspaceReporter {
+
+    //统计的key前缀，不匹配的key归入other
+    private static final String[] PREFIXES =
+            {CACHE_SHOP_KEY, SECKILL_ORDER_KEY, FEED_KEY, BLOG_LIKED_KEY, USER_SIGN_KEY, LOGIN_USER_KEY};
+    private static final String OTHER = "other";
+    //有效期分布的上界(毫秒)及名称，没有过期时间的key单独统计
+    private static final long[] TTL_BOUNDS = {TimeUnit.MINUTES.toMillis(1), TimeUnit.MINUTES.toMillis(10),
+            TimeUnit.HOURS.toMillis(1), TimeUnit.DAYS.toMillis(1), Long.MAX_VALUE};
+    private static final String[] TTL_NAMES = {"<1m", "<10m", "<1h", "<1d", ">=1d"};
+    private static final String NO_TTL = "persistent";
+
+    private static final DefaultRedisScript<List> SAMPLE_SCRIPT;
+
+    static {
+        SAMPLE_SCRIPT = new DefaultRedisScript<>();
+        SAMPLE_SCRIPT.setLocation(new ClassPathResource("keyspace_sample.lua"));
+        SAMPLE_SCRIPT.setResultType(List.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final int scanCount;
+    private final double sampleRate;
+    private final long pauseMillis;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "keyspace-report");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicLong scanned = new AtomicLong();
+    private volatile Map<String, Object> report = Collections.emptyMap();
+
+    public KeyspaceReporter(StringRedisTemplate stringRedisTemplate,
+                            @Value("${hmdp.redis.keyspace.enabled:true}") boolean enabled,
+                            @Value("${hmdp.redis.keyspace.interval-minutes:60}") long intervalMinutes,
+                            @Value("${hmdp.redis.keyspace.scan-count:1000}") int scanCount,
+                            @Value("${hmdp.redis.keyspace.sample-rate:0.05}") double sampleRate,
+                            @Value("${hmdp.redis.keyspace.pause-ms:20}") long pauseMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.scanCount = scanCount;
+        this.sampleRate = sampleRate;
+        this.pauseMillis = pauseMillis;
+        if (enabled) {
+            executor.scheduleWithFixedDelay(this::run, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    //手动触发一次统计，正在统计时返回false
+    public boolean runAsync() {
+        if (running.get()) {
+            return false;
+        }
+        executor.execute(this::run);
+        return true;
+    }
+
+    //最近一次完成的报告及当前进度
+    public Map<String, Object> report() {
+        Map<String, Object> result = new LinkedHashMap<>(report);
+        result.put("running", running.get());
+        result.put("scanning", scanned.get());
+        return result;
+    }
+
+    private void run() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        scanned.set(0);
+        long beginTime = System.currentTimeMillis();
+        Map<String, PrefixStats> stats = new LinkedHashMap<>();
+        for (String prefix : PREFIXES) {
+            stats.put(prefix, new PrefixStats());
+        }
+        stats.put(OTHER, new PrefixStats());
+        try (Cursor<byte[]> cursor = stringRedisTemplate.executeWithStickyConnection(
+                (RedisCallback<Cursor<byte[]>>) connection ->
+                        connection.keyCommands().scan(ScanOptions.scanOptions().count(scanCount).build()))) {
+            List<String> sampled = new ArrayList<>();
+            while (cursor != null && cursor.hasNext()) {
+                //1.按前缀计数，按采样率收集需要统计大小的key
+                String key = new String(cursor.next(), StandardCharsets.UTF_8);
+                stats.get(prefixOf(key)).count++;
+                if (ThreadLocalRandom.current().nextDouble() < sampleRate) {
+                    sampled.add(key);
+                }
+                //2.每扫描一批采样一次，然后暂停，避免持续占用redis
+                if (scanned.incrementAndGet() % scanCount == 0) {
+                    sample(sampled, stats);
+                    sampled.clear();
+                    Thread.sleep(pauseMillis);
+                }
+            }
+            sample(sampled, stats);
+            report = buildReport(stats, beginTime);
+            log.info("键空间统计完成，扫描{}个key，耗时{}ms", scanned.get(), System.currentTimeMillis() - beginTime);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("键空间统计失败", e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void sample(List<String> keys, Map<String, PrefixStats> stats) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        List<?> result = stringRedisTemplate.execute(SAMPLE_SCRIPT, keys);
+        if (result == null) {
+            return;
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            long bytes = ((Number) result.get(2 * i)).longValue();
+            long ttl = ((Number) result.get(2 * i + 1)).longValue();
+            //扫描后已被删除
+            if (ttl == -2) {
+                continue;
+            }
+            PrefixStats prefixStats = stats.get(prefixOf(keys.get(i)));
+            prefixStats.sizes.add(bytes);
+            prefixStats.sampledBytes += bytes;
+            prefixStats.ttls.merge(ttlName(ttl), 1L, Long::sum);
+        }
+    }
+
+    private Map<String, Object> buildReport(Map<String, PrefixStats> stats, long beginTime) {
+        Map<String, Object> prefixes = new LinkedHashMap<>();
+        stats.forEach((prefix, s) -> {
+            Map<String, Object> item = new LinkedHashMap<>();
+            int sampled = s.sizes.size();
+            long avg = sampled == 0 ? 0 : s.sampledBytes / sampled;
+            Collections.sort(s.sizes);
+            item.put("count", s.count);
+            item.put("sampled", sampled);
+            item.put("avgBytes", avg);
+            //按样本平均大小估算的总内存
+            item.put("estimatedBytes", avg * s.count);
+            item.put("p99Bytes", sampled == 0 ? 0 : s.sizes.get((int) Math.ceil(sampled * 0.99) - 1));
+            item.put("maxBytes", sampled == 0 ? 0 : s.sizes.get(sampled - 1));
+            item.put("ttl", s.ttls);
+            prefixes.put(prefix, item);
+        });
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("beginTime", beginTime);
+        result.put("endTime", System.currentTimeMillis());
+        result.put("scanned", scanned.get());
+        result.put("sampleRate", sampleRate);
+        result.put("prefixes", prefixes);
+        return result;
+    }
+
+    private static String prefixOf(String key) {
+        for (String prefix : PREFIXES) {
+            if (key.startsWith(prefix)) {
+                return prefix;
+            }
+        }
+        return OTHER;
+    }
+
+    private static String ttlName(long ttlMillis) {
+        if (ttlMillis < 0) {
+            return NO_TTL;
+        }
+        int i = 0;
+        while (ttlMillis >= TTL_BOUNDS[i]) {
+            i++;
+        }
+        return TTL_NAMES[i];
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static class PrefixStats {
+        private long count;
+        private long sampledBytes;
+        private final List<Long> sizes = new ArrayList<>();
+        //有效期分布，按TTL_NAMES排列
+        private final Map<String, Long> ttls = new LinkedHashMap<>();
+
+        private PrefixStats() {
+            ttls.put(NO_TTL, 0L);
+            for (String name : TTL_NAMES) {
+                ttls.put(name, 0L);
+            }
+        }
+    }
+}
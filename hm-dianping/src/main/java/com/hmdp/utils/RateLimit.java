@@ -0,0 +1,41 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:接口限流，由RateLimitInterceptor在进入controller之前检查。先经过本节点的令牌桶，
+ * 再由rate_limit.lua一次完成用户滑动窗口和全局令牌桶的判断，任意一层拒绝都直接返回失败
+ * @Version:java_15
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RateLimit {
+
+    //限流名称，用于redis key和指标
+    String name();
+
+    //路径变量名，全局令牌桶按该变量的值分别计数，如秒杀按优惠券id；为空时整个接口共用一个令牌桶
+    String key() default "";
+
+    //全局令牌桶每秒生成的令牌数
+    double permitsPerSecond();
+
+    //全局令牌桶容量，即允许的突发请求数，小于1时等于permitsPerSecond
+    long capacity() default 0;
+
+    //每个用户在窗口内对该接口允许的请求数，不区分路径变量，小于1表示不限制
+    int userLimit() default 0;
+
+    //用户滑动窗口长度(毫秒)
+    long userWindowMs() default 1000L;
+
+    //本节点每秒允许该接口的请求数，不区分路径变量，超过的请求不访问redis直接拒绝，小于等于0表示不限制
+    double localPermitsPerSecond() default 0;
+}
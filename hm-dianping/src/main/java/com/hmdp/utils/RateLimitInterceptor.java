@@ -0,0 +1,60 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:第三个拦截器，对声明了@RateLimit的接口限流，被拒绝的请求返回429和失败信息，不进入controller
+ * @Version:java_15
+ */
+public class RateLimitInterceptor implements HandlerInterceptor {
+    private final RateLimiter rateLimiter;
+
+    public RateLimitInterceptor(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        //1.只处理声明了@RateLimit的controller方法
+        if (!(handler instanceof HandlerMethod)) {
+            return true;
+        }
+        RateLimit limit = ((HandlerMethod) handler).getMethodAnnotation(RateLimit.class);
+        if (limit == null) {
+            return true;
+        }
+        //2.取出全局令牌桶对应的路径变量，如优惠券id
+        String resource = "";
+        if (StrUtil.isNotBlank(limit.key())) {
+            Map<String, String> variables =
+                    (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+            resource = variables == null ? "" : StrUtil.nullToEmpty(variables.get(limit.key()));
+        }
+        //3.登录用户按id限流，未登录按客户端地址
+        UserDTO user = UserHolder.getUser();
+        String caller = user != null ? user.getId().toString() : request.getRemoteAddr();
+        RateLimiter.Decision decision = rateLimiter.tryAcquire(limit, resource, caller);
+        if (decision == RateLimiter.Decision.PASS) {
+            return true;
+        }
+        //4.拒绝，直接返回失败信息
+        String message = decision == RateLimiter.Decision.USER_REJECT ? "请求过于频繁，请稍后再试" : "活动太火爆，请稍后再试";
+        response.setStatus(429);
+        response.setContentType("application/json;charset=UTF-8");
+        response.getWriter().write(JSONUtil.toJsonStr(Result.fail(message)));
+        return false;
+    }
+}
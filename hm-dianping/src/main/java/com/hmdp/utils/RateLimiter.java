@@ -0,0 +1,130 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.hmdp.utils.CacheMetrics.*;
+import static com.hmdp.utils.RedisConstants.RATE_LIMIT_KEY;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:@RateLimit的限流实现。本节点令牌桶挡掉超出单机处理能力的请求，剩下的请求执行一次rate_limit.lua，
+ * 同一用户窗口内的重复请求和超出全局令牌的请求都在脚本中拒绝，不再进入秒杀脚本。
+ * redis不可用时放行，由业务自己的熔断判断快速失败
+ * @Version:java_15
+ */
+@Slf4j
+@Component
+public class RateLimiter {
+
+    private static final DefaultRedisScript<Long> RATE_LIMIT_SCRIPT;
+
+    static {
+        RATE_LIMIT_SCRIPT = new DefaultRedisScript<>();
+        RATE_LIMIT_SCRIPT.setLocation(new ClassPathResource("rate_limit.lua"));
+        RATE_LIMIT_SCRIPT.setResultType(Long.class);
+    }
+
+    public enum Decision {
+        PASS,
+        LOCAL_REJECT,
+        USER_REJECT,
+        GLOBAL_REJECT
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisCircuitBreaker circuitBreaker;
+    private final CacheMetrics cacheMetrics;
+    //本节点的令牌桶，每个限流名称一个
+    private final Map<String, LocalBucket> localBuckets = new ConcurrentHashMap<>();
+
+    public RateLimiter(StringRedisTemplate stringRedisTemplate, RedisCircuitBreaker circuitBreaker,
+                       CacheMetrics cacheMetrics) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.circuitBreaker = circuitBreaker;
+        this.cacheMetrics = cacheMetrics;
+    }
+
+    /**
+     * 尝试通过限流
+     * @param limit 接口上的限流配置
+     * @param resource 路径变量的值，整个接口共用时为空字符串
+     * @param caller 用户id，未登录时为客户端地址
+     */
+    public Decision tryAcquire(RateLimit limit, String resource, String caller) {
+        String name = limit.name();
+        //1.本节点按接口限流，不访问redis，轮换路径变量也只能共用这一个令牌桶
+        if (limit.localPermitsPerSecond() > 0
+                && !localBuckets.computeIfAbsent(name, k -> new LocalBucket()).tryAcquire(limit.localPermitsPerSecond())) {
+            cacheMetrics.increment(name, RATE_LIMIT, LOCAL_REJECT);
+            return Decision.LOCAL_REJECT;
+        }
+        //2.redis熔断时跳过分布式限流
+        if (!circuitBreaker.allowRequest()) {
+            cacheMetrics.increment(name, RATE_LIMIT, REDIS_UNAVAILABLE);
+            return pass(name);
+        }
+        //3.一次脚本调用判断用户窗口和全局令牌桶，用户窗口按接口计数，只有全局令牌桶按路径变量区分。两个key使用相同的hash tag
+        String tag = RATE_LIMIT_KEY + "{" + name + "}";
+        long capacity = limit.capacity() > 0 ? limit.capacity() : (long) Math.ceil(limit.permitsPerSecond());
+        long now = System.currentTimeMillis();
+        Long result;
+        try {
+            result = circuitBreaker.call(() -> stringRedisTemplate.execute(RATE_LIMIT_SCRIPT,
+                    Arrays.asList(tag + ":bucket:" + resource, tag + ":user:" + caller),
+                    String.valueOf(limit.permitsPerSecond() / 1000), String.valueOf(capacity), String.valueOf(now),
+                    String.valueOf(limit.userLimit()), String.valueOf(limit.userWindowMs()),
+                    now + ":" + ThreadLocalRandom.current().nextInt()));
+        } catch (DataAccessException e) {
+            log.debug("限流脚本执行失败，放行请求，limit={}：{}", name, e.toString());
+            cacheMetrics.increment(name, RATE_LIMIT, REDIS_UNAVAILABLE);
+            return pass(name);
+        }
+        cacheMetrics.record(name, RATE_LIMIT, REDIS_CHECK, System.currentTimeMillis() - now);
+        if (result != null && result == 1) {
+            cacheMetrics.increment(name, RATE_LIMIT, GLOBAL_REJECT);
+            return Decision.GLOBAL_REJECT;
+        }
+        if (result != null && result == 2) {
+            cacheMetrics.increment(name, RATE_LIMIT, USER_REJECT);
+            return Decision.USER_REJECT;
+        }
+        return pass(name);
+    }
+
+    private Decision pass(String name) {
+        cacheMetrics.increment(name, RATE_LIMIT, LIMIT_PASS);
+        return Decision.PASS;
+    }
+
+    //单机令牌桶，容量为一秒的令牌数
+    private static class LocalBucket {
+        private double tokens = -1;
+        private long last;
+
+        synchronized boolean tryAcquire(double permitsPerSecond) {
+            long now = System.nanoTime();
+            if (tokens < 0) {
+                tokens = permitsPerSecond;
+            } else {
+                tokens = Math.min(permitsPerSecond, tokens + (now - last) / 1e9 * permitsPerSecond);
+            }
+            last = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+    }
+}
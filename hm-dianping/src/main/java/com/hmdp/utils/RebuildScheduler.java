@@ -0,0 +1,152 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:全局共享的缓存重建调度器。线程数和队列长度都有上限，同一个key在排队或执行期间只保留一个任务，
+ * 队列满时直接拒绝，调用方继续返回旧数据，不会因为大量key同时过期堆积任务撑爆内存。
+ * 每秒执行的重建次数不超过预算，超出的任务留在队列中顺延到后面几秒，把过期高峰摊平
+ * @Version:java_15
+ */
+@Slf4j
+@Component
+public class RebuildScheduler {
+
+    private final ThreadPoolExecutor executor;
+    //排队中或执行中的key
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final CacheMetrics.Histogram queueLatency = new CacheMetrics.Histogram();
+    private final CacheMetrics.Histogram executeLatency = new CacheMetrics.Histogram();
+
+    //每秒重建预算
+    private final int budgetPerSecond;
+    private long budgetSecond;
+    private int budgetUsed;
+
+    public RebuildScheduler(@Value("${hmdp.cache.rebuild.threads:10}") int threads,
+                            @Value("${hmdp.cache.rebuild.queue-capacity:1000}") int queueCapacity,
+                            @Value("${hmdp.cache.rebuild.budget-per-second:200}") int budgetPerSecond) {
+        this.budgetPerSecond = budgetPerSecond;
+        AtomicInteger index = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "cache-rebuild-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 提交重建任务
+     * @param key  缓存key，同一个key同时只会有一个任务
+     * @param task 重建逻辑，异常会被记录，不会被吞掉
+     * @return 是否提交成功，key已有任务或队列已满时返回false，调用方需要自行释放已获取的锁
+     */
+    public boolean submit(String key, Runnable task) {
+        //1.同一个key已经在排队或执行，直接合并
+        if (!pending.add(key)) {
+            deduplicated.increment();
+            return false;
+        }
+        long enqueueTime = System.currentTimeMillis();
+        try {
+            //2.队列满时抛出RejectedExecutionException，丢弃本次重建
+            executor.execute(() -> run(key, task, enqueueTime));
+        } catch (RejectedExecutionException e) {
+            pending.remove(key);
+            rejected.increment();
+            log.warn("缓存重建队列已满，丢弃重建任务，key={}", key);
+            return false;
+        }
+        submitted.increment();
+        return true;
+    }
+
+    private void run(String key, Runnable task, long enqueueTime) {
+        long begin = System.currentTimeMillis();
+        try {
+            acquireBudget();
+            begin = System.currentTimeMillis();
+            queueLatency.record(begin - enqueueTime);
+            task.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (CacheBusyException e) {
+            //回源并发已满，本次不重建，调用方继续使用旧数据
+            failed.increment();
+            log.warn("缓存重建被舱壁拒绝，key={}", key);
+        } catch (Exception e) {
+            failed.increment();
+            log.error("缓存重建失败，key={}", key, e);
+        } finally {
+            pending.remove(key);
+            executeLatency.record(System.currentTimeMillis() - begin);
+        }
+    }
+
+    //本秒预算用完时等到下一秒
+    private void acquireBudget() throws InterruptedException {
+        while (true) {
+            long now = System.currentTimeMillis();
+            synchronized (this) {
+                if (now / 1000 != budgetSecond) {
+                    budgetSecond = now / 1000;
+                    budgetUsed = 0;
+                }
+                if (budgetUsed < budgetPerSecond) {
+                    budgetUsed++;
+                    return;
+                }
+            }
+            throttled.increment();
+            Thread.sleep(1000 - now % 1000);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("poolSize", executor.getPoolSize());
+        stats.put("active", executor.getActiveCount());
+        stats.put("queueDepth", executor.getQueue().size());
+        stats.put("queueRemaining", executor.getQueue().remainingCapacity());
+        stats.put("pendingKeys", pending.size());
+        stats.put("submitted", submitted.sum());
+        stats.put("deduplicated", deduplicated.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("failed", failed.sum());
+        stats.put("budgetPerSecond", budgetPerSecond);
+        stats.put("throttled", throttled.sum());
+        stats.put("queueLatency", queueLatency.snapshot());
+        stats.put("executeLatency", executeLatency.snapshot());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,262 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:redis熔断器。统计最近10秒内redis调用的失败率和慢调用比例，超过阈值后打开熔断，
+ * 熔断期间调用方不再访问redis(读走本地缓存或数据库，非关键写直接跳过)，等待一段时间后进入半开状态，
+ * 半开期间只放行half-open-calls次试探调用，其余调用仍按熔断处理，试探调用全部成功后关闭熔断，期间任意一次失败或慢调用重新打开。
+ * 试探许可记录在调用线程上，只有先通过allowRequest领到许可的调用结果才参与半开判断
+ * @Version:java_15
+ */
+@Slf4j
+@Component
+public class RedisCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    //统计窗口按秒分桶
+    private static final int BUCKETS = 10;
+
+    private final long slowCallMillis;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final int minimumCalls;
+    private final long openMillis;
+    private final int halfOpenCalls;
+
+    private final AtomicLongArray bucketSeconds = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray calls = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray failures = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray slowCalls = new AtomicLongArray(BUCKETS);
+
+    private volatile State state = State.CLOSED;
+    private volatile long openedAt;
+    private volatile long halfOpenedAt;
+    //半开状态剩余的试探许可
+    private final AtomicInteger halfOpenPermits = new AtomicInteger();
+    private final AtomicInteger halfOpenPassed = new AtomicInteger();
+    //当前线程领到试探许可时所在的半开轮次，由下一次call/callAsync取走
+    private final ThreadLocal<Long> permitHolder = new ThreadLocal<>();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+
+    public RedisCircuitBreaker(@Value("${hmdp.redis.breaker.slow-call-ms:200}") long slowCallMillis,
+                               @Value("${hmdp.redis.breaker.failure-rate:0.5}") double failureRateThreshold,
+                               @Value("${hmdp.redis.breaker.slow-call-rate:0.5}") double slowCallRateThreshold,
+                               @Value("${hmdp.redis.breaker.minimum-calls:20}") int minimumCalls,
+                               @Value("${hmdp.redis.breaker.open-ms:5000}") long openMillis,
+                               @Value("${hmdp.redis.breaker.half-open-calls:10}") int halfOpenCalls) {
+        this.slowCallMillis = slowCallMillis;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.minimumCalls = minimumCalls;
+        this.openMillis = openMillis;
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    //是否允许访问redis，熔断打开且未到半开时间、或半开状态的试探许可已用完时返回false
+    public boolean allowRequest() {
+        State current = state;
+        if (current == State.CLOSED) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        if (current == State.OPEN) {
+            if (now - openedAt < openMillis) {
+                rejected.increment();
+                return false;
+            }
+            halfOpen(State.OPEN, now);
+        } else if (halfOpenPermits.get() <= 0 && now - halfOpenedAt >= openMillis) {
+            //试探调用被调用方放弃、一直没有结果时，再等待一个熔断时间后重新发放许可
+            halfOpen(State.HALF_OPEN, now);
+        }
+        //半开状态下通过CAS领取许可，只有拿到许可的调用访问redis
+        return acquirePermit();
+    }
+
+    //由expected状态进入新一轮半开，重置试探许可
+    private synchronized void halfOpen(State expected, long now) {
+        if (state != expected || (expected == State.HALF_OPEN && halfOpenPermits.get() > 0)) {
+            return;
+        }
+        state = State.HALF_OPEN;
+        halfOpenedAt = now;
+        halfOpenPassed.set(0);
+        halfOpenPermits.set(halfOpenCalls);
+        log.info("redis熔断进入半开状态，放行{}次试探调用", halfOpenCalls);
+    }
+
+    private boolean acquirePermit() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        int permits;
+        do {
+            permits = halfOpenPermits.get();
+            if (permits <= 0 || state == State.OPEN) {
+                rejected.increment();
+                return false;
+            }
+        } while (!halfOpenPermits.compareAndSet(permits, permits - 1));
+        permitHolder.set(halfOpenedAt);
+        return true;
+    }
+
+    //取走当前线程的试探许可，未领到许可、许可已被上一次调用取走或属于之前的半开轮次时返回false
+    private boolean takePermit() {
+        Long round = permitHolder.get();
+        if (round == null) {
+            return false;
+        }
+        permitHolder.remove();
+        return round == halfOpenedAt;
+    }
+
+    public boolean isOpen() {
+        return state == State.OPEN;
+    }
+
+    //执行一次redis调用并记录耗时和结果，异常原样抛出
+    public <T> T call(Supplier<T> action) {
+        boolean permitted = takePermit();
+        long begin = System.currentTimeMillis();
+        try {
+            T t = action.get();
+            onResult(System.currentTimeMillis() - begin, true, permitted);
+            return t;
+        } catch (RuntimeException e) {
+            onResult(System.currentTimeMillis() - begin, false, permitted);
+            throw e;
+        }
+    }
+
+    //异步调用，在完成时记录耗时和结果，发起调用时的异常原样抛出
+    public <T> CompletableFuture<T> callAsync(Supplier<? extends CompletionStage<T>> action) {
+        //许可在发起调用的线程上，完成回调可能在其他线程执行
+        boolean permitted = takePermit();
+        long begin = System.currentTimeMillis();
+        CompletableFuture<T> future;
+        try {
+            future = action.get().toCompletableFuture();
+        } catch (RuntimeException e) {
+            onResult(System.currentTimeMillis() - begin, false, permitted);
+            throw e;
+        }
+        return future.whenComplete((t, e) -> onResult(System.currentTimeMillis() - begin, e == null, permitted));
+    }
+
+    public void run(Runnable action) {
+        call(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private void onResult(long millis, boolean success, boolean permitted) {
+        boolean slow = millis >= slowCallMillis;
+        //1.半开状态按试探调用的连续结果判断，没有领取许可的调用不计入
+        if (state == State.HALF_OPEN) {
+            if (!permitted) {
+                return;
+            }
+            if (!success || slow) {
+                open();
+            } else if (halfOpenPassed.incrementAndGet() >= halfOpenCalls) {
+                close();
+            }
+            return;
+        }
+        //2.记录到当前秒的桶
+        long second = System.currentTimeMillis() / 1000;
+        int index = (int) (second % BUCKETS);
+        if (bucketSeconds.get(index) != second) {
+            synchronized (this) {
+                //先清零再更新秒数，其他线程看到新的秒数时计数一定已经清零
+                if (bucketSeconds.get(index) != second) {
+                    calls.set(index, 0);
+                    failures.set(index, 0);
+                    slowCalls.set(index, 0);
+                    bucketSeconds.set(index, second);
+                }
+            }
+        }
+        calls.incrementAndGet(index);
+        if (!success) {
+            failures.incrementAndGet(index);
+        }
+        if (slow) {
+            slowCalls.incrementAndGet(index);
+        }
+        //3.窗口内调用次数足够时判断是否需要熔断
+        if (state == State.CLOSED && (!success || slow)) {
+            long[] window = window(second);
+            if (window[0] >= minimumCalls
+                    && (window[1] >= window[0] * failureRateThreshold || window[2] >= window[0] * slowCallRateThreshold)) {
+                open();
+            }
+        }
+    }
+
+    private synchronized void open() {
+        if (state != State.OPEN) {
+            opened.increment();
+            log.warn("redis熔断打开，{}ms内不再访问redis", openMillis);
+        }
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        halfOpenPermits.set(0);
+    }
+
+    private synchronized void close() {
+        for (int i = 0; i < BUCKETS; i++) {
+            calls.set(i, 0);
+            failures.set(i, 0);
+            slowCalls.set(i, 0);
+        }
+        state = State.CLOSED;
+        log.info("redis熔断关闭");
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", state);
+        stats.put("halfOpenPermits", halfOpenPermits.get());
+        stats.put("opened", opened.sum());
+        stats.put("rejected", rejected.sum());
+        long[] window = window(System.currentTimeMillis() / 1000);
+        stats.put("calls", window[0]);
+        stats.put("failures", window[1]);
+        stats.put("slowCalls", window[2]);
+        return stats;
+    }
+
+    //窗口内的调用次数、失败次数、慢调用次数
+    private long[] window(long second) {
+        long[] window = new long[3];
+        for (int i = 0; i < BUCKETS; i++) {
+            if (second - bucketSeconds.get(i) < BUCKETS) {
+                window[0] += calls.get(i);
+                window[1] += failures.get(i);
+                window[2] += slowCalls.get(i);
+            }
+        }
+        return window;
+    }
+}
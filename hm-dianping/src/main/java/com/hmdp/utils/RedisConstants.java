@@ -5,16 +5,64 @@ public class RedisConstants {
     public static final Long LOGIN_CODE_TTL = 2L;
     public static final String LOGIN_USER_KEY = "login:token:";
     public static final Long LOGIN_USER_TTL = 36000L;
+    //redis熔断期间本地保留登录用户的时间(分钟)
+    public static final Long LOGIN_USER_LOCAL_TTL = 10L;
 
     public static final Long CACHE_NULL_TTL = 2L;
 
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
 
+    public static final long CACHE_BLOG_TTL = 30L;
+    public static final String CACHE_BLOG_KEY = "cache:blog:";
+
+    //以下缓存通过@Cached声明，注解属性只能使用基本类型常量
+    public static final long CACHE_USER_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+
+    public static final long CACHE_VOUCHER_TTL = 5L;
+    public static final String CACHE_SHOP_VOUCHER_KEY = "cache:shop-voucher:";
+
+    public static final long CACHE_SHOP_TYPE_TTL = 60L;
+    public static final String CACHE_SHOP_TYPE_KEY = "cache:shop-type:";
+
+    //本地一级缓存容量与有效期(秒)
+    public static final int CACHE_LOCAL_CAPACITY = 10000;
+    public static final Long CACHE_LOCAL_TTL = 60L;
+    //没有失效通知的热点key(如点赞排行)在本地的有效期(秒)
+    public static final Long CACHE_HOT_KEY_LOCAL_TTL = 2L;
+    //跨节点失效本地缓存的频道
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    //布隆过滤器新增元素的同步频道
+    public static final String CACHE_BLOOM_CHANNEL = "cache:bloom:add";
+    //商铺布隆过滤器预计容量与误判率
+    public static final Long CACHE_SHOP_BLOOM_EXPECTED = 1000000L;
+    public static final Double CACHE_SHOP_BLOOM_FPP = 0.01;
+
+    //概率提前刷新的系数，越大越倾向于提前刷新
+    public static final double CACHE_XFETCH_BETA = 1.0;
+
+    //缓存版本号，完整key为 缓存key:v。失效时先INCR版本再删除缓存，异步重建只在版本未变时写入
+    public static final String CACHE_VERSION_SUFFIX = ":v";
+    //版本key的有效期(小时)，需远大于一次重建的耗时
+    public static final Long CACHE_VERSION_TTL = 24L;
+
+    //缓存重建锁，完整key为 lock:缓存key，不同前缀的相同id互不影响
+    public static final String CACHE_LOCK_KEY = "lock:";
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    //秒杀订单消息所在的stream
+    public static final String SECKILL_ORDER_STREAM = "stream.orders";
+    //无法写入数据库的订单消息，保留原消息内容、原消息id和失败原因
+    public static final String SECKILL_ORDER_DEAD_LETTER = "stream.orders.dlq";
+    //已下单用户集合，保证一人一单
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    //优惠券售罄/补货的同步频道，消息为 +优惠券id 或 -优惠券id
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:sold-out";
+    //接口限流，全局令牌桶为 rate:{限流名称}:bucket:路径变量值，用户窗口为 rate:{限流名称}:user:用户id
+    public static final String RATE_LIMIT_KEY = "rate:";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
@@ -8,4 +8,6 @@ import java.time.LocalDateTime;
 public class RedisData {
     private LocalDateTime expireTime;
     private Object data;
+    //最近一次重建耗时(毫秒)，用于概率提前刷新
+    private Long rebuildCost;
 }
@@ -1,8 +1,12 @@
 package com.hmdp.utils;
 
+import cn.hutool.cache.Cache;
+import cn.hutool.cache.CacheUtil;
 import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.HandlerAdapter;
 import org.springframework.web.servlet.HandlerInterceptor;
@@ -12,18 +16,26 @@ import javax.servlet.http.HttpServletResponse;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import static com.hmdp.utils.RedisConstants.CACHE_LOCAL_CAPACITY;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_LOCAL_TTL;
+
 /**
  * @Author:SpongeBOb
  * @Date:2023/1/1
  * @Description:第一个拦截器，拦截所有并保存ThreadLocal和刷新token有效期
  * @Version:java_15
  */
-
+@Slf4j
 public class RefreshTokenInterceptor implements HandlerInterceptor {
     private StringRedisTemplate stringRedisTemplate;
+    private RedisCircuitBreaker circuitBreaker;
+    //最近登录过的用户，redis熔断期间用来识别用户，不刷新token有效期
+    private final Cache<String, UserDTO> localTokens =
+            CacheUtil.newLRUCache(CACHE_LOCAL_CAPACITY, TimeUnit.MINUTES.toMillis(LOGIN_USER_LOCAL_TTL));
 
-    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate) {
+    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate, RedisCircuitBreaker circuitBreaker) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.circuitBreaker = circuitBreaker;
     }
 
     @Override
@@ -35,7 +47,19 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
         }
         //基于token获取redis中的用户
         String key = RedisConstants.LOGIN_USER_KEY + token;
-        Map<Object, Object> userMap = stringRedisTemplate.opsForHash().entries(key);
+        //redis熔断时只使用本地记录的用户
+        if (!circuitBreaker.allowRequest()) {
+            saveLocalUser(token);
+            return true;
+        }
+        Map<Object, Object> userMap;
+        try {
+            userMap = circuitBreaker.call(() -> stringRedisTemplate.opsForHash().entries(key));
+        } catch (DataAccessException e) {
+            log.warn("读取登录用户失败：{}", e.toString());
+            saveLocalUser(token);
+            return true;
+        }
 
         //判断user是否存在
         if (userMap.isEmpty()) {
@@ -45,12 +69,24 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
         UserDTO userDTO = BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
         //存在，保存用户信息到ThreadLocal
         UserHolder.saveUser(userDTO);
-        //刷新token有效期
-        stringRedisTemplate.expire(key,RedisConstants.LOGIN_USER_TTL, TimeUnit.MINUTES);
+        localTokens.put(token, userDTO);
+        //刷新token有效期，失败不影响本次请求
+        try {
+            circuitBreaker.run(() -> stringRedisTemplate.expire(key,RedisConstants.LOGIN_USER_TTL, TimeUnit.MINUTES));
+        } catch (DataAccessException e) {
+            log.warn("刷新token有效期失败：{}", e.toString());
+        }
         //放行
         return true;
     }
 
+    private void saveLocalUser(String token) {
+        UserDTO userDTO = localTokens.get(token, false);
+        if (userDTO != null) {
+            UserHolder.saveUser(userDTO);
+        }
+    }
+
     @Override
     public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
         //移除用户
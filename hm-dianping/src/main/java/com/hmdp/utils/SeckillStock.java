@@ -0,0 +1,60 @@
+package com.hmdp.utils;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:秒杀库存。库存保存在一个key中，判断资格、扣减库存、保存用户和发送订单消息在seckill.lua中一起完成，
+ * 不会出现只扣了库存没有订单的情况
+ * @Version:java_15
+ */
+@Component
+public class SeckillStock {
+
+    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+
+    //静态代码块就是类加载的时候会被执行一次,不会浪费IO资源，避免每次加载都要重新创建对象
+    static {
+        SECKILL_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
+        SECKILL_SCRIPT.setResultType(Long.class);//配置返回值
+    }
+
+    //与seckill.lua的返回值一致
+    public static final int SUCCESS = 0;
+    public static final int SOLD_OUT = 1;
+    public static final int DUPLICATE = 2;
+    //优惠券不存在或没有写入库存
+    public static final int NOT_FOUND = 3;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public SeckillStock(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 写入优惠券库存
+     */
+    public void init(Long voucherId, int stock) {
+        stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucherId, String.valueOf(stock));
+    }
+
+    /**
+     * 判断购买资格并扣减库存，成功后发送订单消息
+     * @return SUCCESS、SOLD_OUT、DUPLICATE或NOT_FOUND
+     */
+    public int acquire(Long voucherId, Long userId, long orderId) {
+        Long result = stringRedisTemplate.execute(SECKILL_SCRIPT, Collections.emptyList(),
+                voucherId.toString(), userId.toString(), String.valueOf(orderId));
+        return result.intValue();
+    }
+}
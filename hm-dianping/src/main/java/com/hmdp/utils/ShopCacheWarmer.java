@@ -0,0 +1,186 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.service.IShopService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:店铺缓存预热，按id分批读取tb_shop，并行用管道写入逻辑过期缓存和GEO索引。
+ * 启动时在ApplicationRunner中同步执行，Spring在所有Runner结束后才发布ACCEPTING_TRAFFIC，预热完成前应用不会就绪；
+ * 预热失败只记录日志，不影响启动。缓存与saveShop2Redis一样按版本写入，预热期间被更新的店铺不会被旧数据覆盖
+ * @Version:java_15
+ */
+@Slf4j
+@Component
+public class ShopCacheWarmer implements ApplicationRunner {
+
+    @Resource
+    private IShopService shopService;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Value("${hmdp.cache.warm-up.enabled:true}")
+    private boolean enabled;
+    @Value("${hmdp.cache.warm-up.chunk-size:500}")
+    private int chunkSize;
+    @Value("${hmdp.cache.warm-up.parallelism:4}")
+    private int parallelism;
+    @Value("${hmdp.cache.shop-hash:false}")
+    private boolean shopHash;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicLong processed = new AtomicLong();
+    private volatile long total;
+    private volatile long beginTime;
+    private volatile long endTime;
+    private volatile String error;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (enabled) {
+            warmUpQuietly();
+        }
+    }
+
+    //预热失败时缓存按需重建，不阻止应用启动
+    private void warmUpQuietly() {
+        try {
+            warmUp();
+        } catch (Exception e) {
+            log.error("店铺缓存预热失败", e);
+        }
+    }
+
+    //手动触发预热，已经在执行时返回false
+    public boolean warmUpAsync() {
+        if (running.get()) {
+            return false;
+        }
+        new Thread(this::warmUpQuietly, "shop-cache-warm-up").start();
+        return true;
+    }
+
+    public Map<String, Object> progress() {
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("running", running.get());
+        progress.put("total", total);
+        progress.put("processed", processed.get());
+        progress.put("beginTime", beginTime);
+        progress.put("endTime", endTime);
+        progress.put("error", error);
+        return progress;
+    }
+
+    public void warmUp() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        processed.set(0);
+        total = 0;
+        beginTime = System.currentTimeMillis();
+        endTime = 0;
+        error = null;
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        //限制同时在写入的批次数，避免读数据库的速度远超写redis导致内存堆积
+        Semaphore permits = new Semaphore(parallelism);
+        try {
+            total = shopService.count();
+            log.info("开始预热店铺缓存，共{}条", total);
+            long lastId = 0;
+            while (true) {
+                //1.按id分页读取id，避免大偏移量的limit
+                List<Long> ids = shopService.listObjs(new QueryWrapper<Shop>()
+                        .select("id")
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("LIMIT " + chunkSize), id -> Long.valueOf(id.toString()));
+                if (ids.isEmpty()) {
+                    break;
+                }
+                lastId = ids.get(ids.size() - 1);
+                //2.查询数据库之前读取版本，再查询店铺数据
+                Map<Long, String> versions = cacheClient.currentVersions(CACHE_SHOP_KEY, ids);
+                List<Shop> shops = shopService.listByIds(ids);
+                //3.并行写入redis
+                permits.acquire();
+                executor.submit(() -> {
+                    try {
+                        writeChunk(shops, versions);
+                    } catch (Exception e) {
+                        error = e.toString();
+                        log.error("店铺缓存预热失败", e);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+            //4.等待所有批次写完
+            permits.acquire(parallelism);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            error = e.toString();
+            throw e;
+        } finally {
+            executor.shutdown();
+            endTime = System.currentTimeMillis();
+            running.set(false);
+            log.info("店铺缓存预热结束，处理{}条，耗时{}ms", processed.get(), endTime - beginTime);
+        }
+    }
+
+    private void writeChunk(List<Shop> shops, Map<Long, String> versions) {
+        //1.逻辑过期缓存，两种存储格式都会覆盖已有的key，切换格式后重启即可全部重写；版本已变化的key跳过
+        int written = shopHash
+                ? cacheClient.setWithLogicalExpireHashBatch(
+                        CACHE_SHOP_KEY, shops, Shop::getId, versions, CACHE_SHOP_TTL, TimeUnit.MINUTES)
+                : cacheClient.setWithLogicalExpireBatch(
+                        CACHE_SHOP_KEY, shops, Shop::getId, versions, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        if (written < shops.size()) {
+            log.info("{}个店铺在预热期间被更新，放弃写入缓存", shops.size() - written);
+        }
+        //2.按类型写入GEO
+        Map<Long, List<Shop>> byType = shops.stream().collect(Collectors.groupingBy(Shop::getTypeId));
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            byType.forEach((typeId, list) -> {
+                List<RedisGeoCommands.GeoLocation<String>> locations = new ArrayList<>(list.size());
+                for (Shop shop : list) {
+                    locations.add(new RedisGeoCommands.GeoLocation<>(
+                            shop.getId().toString(), new Point(shop.getX(), shop.getY())));
+                }
+                conn.geoAdd(SHOP_GEO_KEY + typeId, locations);
+            });
+            return null;
+        });
+        processed.addAndGet(shops.size());
+    }
+}
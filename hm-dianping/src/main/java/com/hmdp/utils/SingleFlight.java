@@ -0,0 +1,57 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:同一个JVM内相同key的并发加载合并为一次，其余线程等待同一个future的结果
+ * @Version:java_15
+ */
+public class SingleFlight {
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> loader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> running = calls.putIfAbsent(key, future);
+        if (running != null) {
+            //已有线程在加载，等待其结果
+            return (T) await(running);
+        }
+        try {
+            T value = loader.get();
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, future);
+        }
+    }
+
+    //当前正在加载的key数量
+    public int inFlight() {
+        return calls.size();
+    }
+
+    private static Object await(CompletableFuture<Object> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
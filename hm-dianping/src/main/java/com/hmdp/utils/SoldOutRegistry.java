@@ -0,0 +1,78 @@
+package com.hmdp.utils;
+
+import cn.hutool.cache.Cache;
+import cn.hutool.cache.CacheUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+
+/**
+ * @Author:SpongeBOb
+ * @Date:2026/10/17
+ * @Description:本地售罄标记。秒杀脚本返回库存不足后在本节点标记该优惠券，并通过redis发布订阅通知其他节点，
+ * 之后的请求在本地直接拒绝，不再生成订单id也不再执行脚本；补货时清除标记并同样通知其他节点。
+ * 发布订阅不保证送达，标记带有有效期，错过补货通知的节点最迟在有效期后恢复
+ * @Version:java_15
+ */
+@Slf4j
+@Component
+public class SoldOutRegistry {
+
+    private static final int CAPACITY = 10000;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Cache<Long, Boolean> soldOut;
+
+    public SoldOutRegistry(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer listenerContainer,
+                           @Value("${hmdp.seckill.sold-out-ttl-seconds:60}") long ttlSeconds) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.soldOut = CacheUtil.newLRUCache(CAPACITY, TimeUnit.SECONDS.toMillis(ttlSeconds));
+        //订阅其他节点的售罄和补货消息
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            Long voucherId = Long.valueOf(body.substring(1));
+            if (body.charAt(0) == '+') {
+                soldOut.put(voucherId, Boolean.TRUE);
+            } else {
+                soldOut.remove(voucherId);
+            }
+        }, new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL));
+    }
+
+    public boolean isSoldOut(Long voucherId) {
+        return soldOut.containsKey(voucherId);
+    }
+
+    //标记售罄，本节点首次标记时通知其他节点
+    public void markSoldOut(Long voucherId) {
+        if (soldOut.containsKey(voucherId)) {
+            return;
+        }
+        soldOut.put(voucherId, Boolean.TRUE);
+        publish("+" + voucherId);
+    }
+
+    //补货后清除所有节点的标记
+    public void clear(Long voucherId) {
+        soldOut.remove(voucherId);
+        publish("-" + voucherId);
+    }
+
+    //通知失败只影响其他节点，它们会在下一次执行脚本时自行发现
+    private void publish(String message) {
+        try {
+            stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, message);
+        } catch (DataAccessException e) {
+            log.warn("发布售罄消息失败，message={}：{}", message, e.toString());
+        }
+    }
+}
@@ -0,0 +1,14 @@
+--版本一致时才写入缓存，避免慢重建覆盖更新后的数据
+--KEYS[1] 缓存key，KEYS[2] 版本key
+--ARGV[1] 查询数据库前读取的版本，ARGV[2] 缓存值，ARGV[3] 有效期(毫秒)，0表示不设置过期时间
+local version = redis.call('GET', KEYS[2]) or '0'
+if version ~= ARGV[1] then
+    --期间缓存已被失效，放弃写入
+    return 0
+end
+if tonumber(ARGV[3]) > 0 then
+    redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3])
+else
+    redis.call('SET', KEYS[1], ARGV[2])
+end
+return 1
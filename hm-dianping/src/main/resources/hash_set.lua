@@ -0,0 +1,10 @@
+--用hash保存缓存对象：先删除旧key再写入全部字段，读取方不会看到新旧字段混合的结果
+--KEYS[1] 缓存key，KEYS[2] 版本key
+--ARGV[1] 查询数据库前读取的版本，为空字符串时不校验，ARGV[2]开始依次为 字段1,值1,字段2,值2...
+if ARGV[1] ~= '' and (redis.call('GET', KEYS[2]) or '0') ~= ARGV[1] then
+    --期间缓存已被失效，放弃写入
+    return 0
+end
+redis.call('DEL', KEYS[1])
+redis.call('HSET', KEYS[1], unpack(ARGV, 2))
+return 1
@@ -0,0 +1,8 @@
+--批量读取key的内存占用和剩余有效期，返回 字节数1,剩余毫秒1,字节数2,剩余毫秒2...
+--key在扫描后已被删除时字节数为0，剩余毫秒为-2
+local result = {}
+for i, key in ipairs(KEYS) do
+    result[2 * i - 1] = redis.call('MEMORY', 'USAGE', key) or 0
+    result[2 * i] = redis.call('PTTL', key)
+end
+return result
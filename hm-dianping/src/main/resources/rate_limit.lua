@@ -0,0 +1,40 @@
+--用户滑动窗口和全局令牌桶，返回0通过，1全局令牌不足，2用户请求过于频繁
+--KEYS[1] 全局令牌桶key  KEYS[2] 用户窗口key，两个key使用相同的hash tag
+--ARGV[1] 每毫秒生成的令牌数  ARGV[2] 令牌桶容量  ARGV[3] 当前时间(毫秒)
+--ARGV[4] 用户窗口内允许的请求数，小于1时不检查用户  ARGV[5] 用户窗口长度(毫秒)  ARGV[6] 本次请求在窗口中的唯一标识
+local rate = tonumber(ARGV[1])
+local capacity = tonumber(ARGV[2])
+local now = tonumber(ARGV[3])
+local userLimit = tonumber(ARGV[4])
+local window = tonumber(ARGV[5])
+
+--1.先判断用户窗口，同一用户的突发请求不消耗全局令牌
+if (userLimit > 0) then
+    redis.call('zremrangebyscore', KEYS[2], 0, now - window)
+    if (redis.call('zcard', KEYS[2]) >= userLimit) then
+        return 2
+    end
+end
+
+--2.按上次取令牌到现在的时间补充令牌
+local bucket = redis.call('hmget', KEYS[1], 'tokens', 'ts')
+local tokens = tonumber(bucket[1])
+local ts = tonumber(bucket[2])
+if (tokens == nil) then
+    tokens = capacity
+    ts = now
+end
+tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate)
+if (tokens < 1) then
+    return 1
+end
+redis.call('hset', KEYS[1], 'tokens', tokens - 1, 'ts', math.max(now, ts))
+--令牌桶补满所需的时间后key可以过期，过期后等同于满桶
+redis.call('pexpire', KEYS[1], math.ceil(capacity / rate) + 1000)
+
+--3.记录用户本次请求
+if (userLimit > 0) then
+    redis.call('zadd', KEYS[2], now, ARGV[6])
+    redis.call('pexpire', KEYS[2], window)
+end
+return 0
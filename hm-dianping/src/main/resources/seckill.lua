@@ -12,20 +12,25 @@ local stockKey = 'seckill:stock:' .. voucherId
 local orderKey = 'seckill:order:' .. voucherId
 
 --3.脚本业务
---3.1判断库存是否充足 get stockKey
-if (tonumber(redis.call('get', stockKey)) <= 0) then
+--3.1判断优惠券是否存在，不存在返回3
+local stock = tonumber(redis.call('get', stockKey))
+if (stock == nil) then
+    return 3
+end
+--3.2判断库存是否充足 get stockKey
+if (stock <= 0) then
     --库存不足，返回1
     return 1
 end
---3.2判断用户是否下过单 get stockKey
+--3.3判断用户是否下过单 get stockKey
 if (redis.call('sismember', orderKey, userId) == 1) then
     --存在，说明是重复下单，返回2
     return 2
 end
---3.3扣减库存   incrby stockKey -1
+--3.4扣减库存   incrby stockKey -1
 redis.call('incrby', stockKey, -1)
---3.4保存用户   sadd orderKey userId
+--3.5保存用户   sadd orderKey userId
 redis.call('sadd', orderKey, userId)
---3.5发送消息到队列中
+--3.6发送消息到队列中
 redis.call('xadd','stream.orders','*','userId',userId,'voucherId',voucherId,'id',orderId)
 return 0
@@ -1,13 +1,28 @@
 package com.hmdp;
 
 
+import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.Shop;
+import com.hmdp.entity.Voucher;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherOrderService;
 import com.hmdp.service.impl.ShopServiceImpl;
+import com.hmdp.utils.AdaptiveTtlPolicy;
+import com.hmdp.utils.BinaryCacheCodec;
+import com.hmdp.utils.BloomFilter;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheCodec;
+import com.hmdp.utils.HotKeyDetector;
+import com.hmdp.utils.JsonCacheCodec;
+import com.hmdp.utils.RebuildScheduler;
+import com.hmdp.utils.RedisCircuitBreaker;
+import com.hmdp.utils.RedisData;
 import com.hmdp.utils.RedisIdWorker;
 import com.hmdp.utils.SystemConstants;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
@@ -15,21 +30,36 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.geo.Point;
 import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
 import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @Slf4j
 @SpringBootTest
@@ -40,6 +70,10 @@ class HmDianPingApplicationTests {
     @Resource
     private CacheClient cacheClient;
     @Resource
+    private IVoucherOrderService voucherOrderService;
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+    @Resource
     private RedisIdWorker redisIdWorker;
     @Resource
     private RedissonClient redissonClient;
@@ -57,6 +91,375 @@ class HmDianPingApplicationTests {
 
     }
 
+    //对比json与二进制序列化的编解码耗时和每个Shop的字节数
+    @Test
+    @Disabled("基准测试，需要数据库中的店铺数据，手动运行")
+    void testCodecBenchmark() {
+        Shop shop = shopService.getById(1L);
+        RedisData redisData = new RedisData();
+        redisData.setData(shop);
+        redisData.setExpireTime(LocalDateTime.now().plusMinutes(30));
+        CacheCodec[] codecs = {new JsonCacheCodec(), new BinaryCacheCodec()};
+        int rounds = 200000;
+        for (CacheCodec codec : codecs) {
+            byte[] bytes = codec.encodeLogical(redisData);
+            //预热
+            for (int i = 0; i < rounds; i++) {
+                codec.decodeLogical(codec.encodeLogical(redisData), Shop.class);
+            }
+            long begin = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                codec.encodeLogical(redisData);
+            }
+            long encodeNs = (System.nanoTime() - begin) / rounds;
+            begin = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                codec.decodeLogical(bytes, Shop.class);
+            }
+            long decodeNs = (System.nanoTime() - begin) / rounds;
+            log.info("{}: {} bytes/shop, encode {} ns/op, decode {} ns/op",
+                    codec.getClass().getSimpleName(), bytes.length, encodeNs, decodeNs);
+        }
+    }
+
+    //同一个店铺分别用两种格式编码：二进制格式更小，两种格式解码后都与原对象相等
+    @Test
+    void testCodecSizeAndRoundTrip() {
+        Shop shop = new Shop().setId(1L).setName("103茶餐厅").setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg")
+                .setArea("大关").setAddress("金华路锦昌文华苑29号").setX(120.149192).setY(30.316078)
+                .setAvgPrice(80L).setSold(4215).setComments(3035).setScore(37).setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+        RedisData redisData = new RedisData();
+        redisData.setData(shop);
+        redisData.setExpireTime(LocalDateTime.of(2026, 10, 17, 12, 0));
+        CacheCodec json = new JsonCacheCodec();
+        CacheCodec binary = new BinaryCacheCodec();
+        assertTrue(binary.encode(shop).length < json.encode(shop).length);
+        assertTrue(binary.encodeLogical(redisData).length < json.encodeLogical(redisData).length);
+        for (CacheCodec codec : new CacheCodec[]{json, binary}) {
+            assertEquals(shop, codec.decode(codec.encode(shop), Shop.class));
+            RedisData decoded = codec.decodeLogical(codec.encodeLogical(redisData), Shop.class);
+            assertEquals(shop, decoded.getData());
+            assertEquals(redisData.getExpireTime(), decoded.getExpireTime());
+        }
+    }
+
+    //逻辑过期缓存无法反序列化时，并发请求合并为一次数据库查询，并同步写回可以解析的数据
+    @Test
+    void testLogicalExpireDecodeFailure() throws InterruptedException {
+        String keyPrefix = "test:shop:";
+        String key = keyPrefix + 1L;
+        stringRedisTemplate.opsForValue().set(key, "{broken");
+        AtomicInteger loads = new AtomicInteger();
+        Function<Long, Shop> dbFallback = id -> {
+            loads.incrementAndGet();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return shopService.getById(id);
+        };
+        try {
+            //1.并发读取损坏的缓存，只查询一次数据库
+            CountDownLatch done = new CountDownLatch(10);
+            for (int i = 0; i < 10; i++) {
+                es.submit(() -> {
+                    try {
+                        assertNotNull(cacheClient.queryWithLogicalExpire(keyPrefix, 1L, Shop.class, dbFallback, 10L, TimeUnit.SECONDS));
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(1, loads.get());
+            //2.写回后的缓存可以直接命中
+            assertEquals(1L, cacheClient.queryWithLogicalExpire(keyPrefix, 1L, Shop.class, dbFallback, 10L, TimeUnit.SECONDS).getId());
+            assertEquals(1, loads.get());
+        } finally {
+            stringRedisTemplate.delete(key);
+        }
+    }
+
+    //data为null的逻辑过期数据可以编解码，二进制格式中字段结构不一致的数据解码时抛出异常，由CacheClient按未命中处理
+    @Test
+    void testCodecNullData() {
+        RedisData redisData = new RedisData();
+        redisData.setExpireTime(LocalDateTime.now().plusMinutes(30));
+        for (CacheCodec codec : new CacheCodec[]{new JsonCacheCodec(), new BinaryCacheCodec()}) {
+            RedisData decoded = codec.decodeLogical(codec.encodeLogical(redisData), Shop.class);
+            assertNull(decoded.getData());
+            assertNotNull(decoded.getExpireTime());
+        }
+        Shop shop = new Shop();
+        shop.setId(1L);
+        byte[] bytes = new BinaryCacheCodec().encode(shop);
+        assertThrows(IllegalStateException.class, () -> new BinaryCacheCodec().decode(bytes, Voucher.class));
+    }
+
+    //重复写入同一个id不计数，写入个数超过预计容量后标记需要重建，且只标记一次
+    @Test
+    void testBloomFilterSaturation() {
+        BloomFilter bloomFilter = new BloomFilter(100, 0.01);
+        for (long id = 0; id < 100; id++) {
+            bloomFilter.put(id);
+            bloomFilter.put(id);
+        }
+        assertFalse(bloomFilter.isSaturated());
+        for (long id = 100; id < 200; id++) {
+            bloomFilter.put(id);
+        }
+        assertTrue(bloomFilter.isSaturated());
+        assertTrue(bloomFilter.markResizing());
+        assertFalse(bloomFilter.markResizing());
+    }
+
+    //半开状态只放行half-open-calls次试探调用，只有领到许可的调用结果参与判断，试探全部成功后关闭熔断
+    @Test
+    void testCircuitBreakerHalfOpen() throws InterruptedException {
+        RedisCircuitBreaker breaker = new RedisCircuitBreaker(200, 0.5, 0.5, 1, 500, 3);
+        assertThrows(IllegalStateException.class, () -> breaker.run(() -> {
+            throw new IllegalStateException();
+        }));
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.allowRequest());
+        Thread.sleep(600);
+        //1.领到许可的调用成功，计入半开判断
+        assertTrue(breaker.allowRequest());
+        breaker.call(() -> "OK");
+        //2.没有许可的调用失败时不会重新打开熔断
+        assertThrows(IllegalStateException.class, () -> breaker.run(() -> {
+            throw new IllegalStateException();
+        }));
+        assertEquals(RedisCircuitBreaker.State.HALF_OPEN, breaker.stats().get("state"));
+        //3.许可用完后拒绝，被放弃的许可没有结果，熔断保持半开
+        assertTrue(breaker.allowRequest());
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        breaker.call(() -> "OK");
+        assertEquals(RedisCircuitBreaker.State.HALF_OPEN, breaker.stats().get("state"));
+        //4.再等待一个熔断时间后重新发放许可，试探全部成功后关闭
+        Thread.sleep(600);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.call(() -> "OK");
+        }
+        assertEquals(RedisCircuitBreaker.State.CLOSED, breaker.stats().get("state"));
+    }
+
+    //模拟批量加载后集中过期：同一批写入的key过期后立刻被访问并提交重建。固定有效期时所有重建同时提交；
+    //随机有效期由CacheClient.jitter把过期时间打散，再由RebuildScheduler按每秒预算执行，数据库每秒承受的重建次数不超过预算
+    @Test
+    void testExpirySpread() throws InterruptedException {
+        int keys = 400;
+        int budgetPerSecond = 100;
+        long ttlMillis = TimeUnit.SECONDS.toMillis(20);
+        //1.固定有效期，不限预算
+        int baseline = rebuildPeak(keys, ttlMillis, 0, Integer.MAX_VALUE);
+        //2.随机有效期加每秒重建预算
+        int spread = rebuildPeak(keys, ttlMillis, 0.1, budgetPerSecond);
+        log.info("每秒重建峰值：固定有效期={}，随机有效期+预算{}/s={}", baseline, budgetPerSecond, spread);
+        assertTrue(spread < baseline);
+        assertTrue(spread <= budgetPerSecond);
+    }
+
+    //按过期时间向真实的RebuildScheduler提交重建任务，返回每秒实际执行的重建次数峰值
+    private int rebuildPeak(int keys, long ttlMillis, double jitter, int budgetPerSecond) throws InterruptedException {
+        RebuildScheduler scheduler = new RebuildScheduler(10, keys, budgetPerSecond);
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        Map<Long, AtomicInteger> perSecond = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(keys);
+        try {
+            for (int i = 0; i < keys; i++) {
+                String key = CACHE_SHOP_KEY + i;
+                //所有key同时写入，只需按超出基础有效期的部分延迟提交
+                long delay = CacheClient.jitter(ttlMillis, jitter) - ttlMillis;
+                timer.schedule(() -> scheduler.submit(key, () -> {
+                    perSecond.computeIfAbsent(System.currentTimeMillis() / 1000, second -> new AtomicInteger()).incrementAndGet();
+                    done.countDown();
+                }), delay, TimeUnit.MILLISECONDS);
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+        } finally {
+            timer.shutdownNow();
+            scheduler.shutdown();
+        }
+        return perSecond.values().stream().mapToInt(AtomicInteger::get).max().orElse(0);
+    }
+
+    //对比同一批店铺按json字符串和hash保存时每个key占用的内存，并按100万店铺估算总量。
+    //hash中任一字段超过hash-max-listpack-value时会变为hashtable编码，这里同时统计编码分布
+    @Test
+    @Disabled("内存统计报告，需要数据库和redis，手动运行")
+    void testHashMemoryReport() {
+        List<Shop> shops = shopService.query().last("LIMIT 1000").list();
+        CacheCodec json = new JsonCacheCodec();
+        String jsonPrefix = "report:json:";
+        String hashPrefix = "report:hash:";
+        //1.分别按两种格式写入临时key
+        for (Shop shop : shops) {
+            RedisData redisData = new RedisData();
+            redisData.setData(shop);
+            redisData.setExpireTime(LocalDateTime.now().plusMinutes(30));
+            stringRedisTemplate.opsForValue().set(jsonPrefix + shop.getId(),
+                    new String(json.encodeLogical(redisData), StandardCharsets.UTF_8));
+        }
+        cacheClient.setWithLogicalExpireHashBatch(hashPrefix, shops, Shop::getId, 30L, TimeUnit.MINUTES);
+        //2.MEMORY USAGE统计每个key的字节数
+        Map<String, Integer> encodings = new TreeMap<>();
+        long jsonBytes = 0;
+        long hashBytes = 0;
+        for (Shop shop : shops) {
+            jsonBytes += memoryUsage(jsonPrefix + shop.getId());
+            hashBytes += memoryUsage(hashPrefix + shop.getId());
+            String encoding = stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.keyCommands()
+                    .encodingOf((hashPrefix + shop.getId()).getBytes(StandardCharsets.UTF_8)).raw());
+            encodings.merge(encoding, 1, Integer::sum);
+        }
+        //3.输出平均值和100万店铺的估算
+        int total = 1000000;
+        long jsonAvg = jsonBytes / shops.size();
+        long hashAvg = hashBytes / shops.size();
+        log.info("样本{}个店铺，json: {}字节/key，hash: {}字节/key，hash编码分布: {}", shops.size(), jsonAvg, hashAvg, encodings);
+        log.info("按{}个店铺估算，json约{}MB，hash约{}MB，节省{}%", total,
+                jsonAvg * total >> 20, hashAvg * total >> 20, 100 - hashAvg * 100 / jsonAvg);
+        //4.清理临时key
+        stringRedisTemplate.delete(shops.stream().map(shop -> jsonPrefix + shop.getId()).collect(Collectors.toList()));
+        stringRedisTemplate.delete(shops.stream().map(shop -> hashPrefix + shop.getId()).collect(Collectors.toList()));
+    }
+
+    private long memoryUsage(String key) {
+        Object bytes = stringRedisTemplate.execute((RedisCallback<Object>) connection ->
+                connection.execute("MEMORY", "USAGE".getBytes(StandardCharsets.UTF_8), key.getBytes(StandardCharsets.UTF_8)));
+        return bytes == null ? 0 : (Long) bytes;
+    }
+
+    //按Zipf分布模拟10万个店铺的访问，对比固定有效期和自适应有效期下的命中率、回源QPS和常驻redis的内存。
+    //每个key按泊松到达估算：一个周期为有效期T加上过期后等待下一次访问的1/λ，周期内命中λT次、回源1次，常驻比例为T/(T+1/λ)。
+    //自适应有效期用命中率换内存：长尾key更早释放，但回源次数随之增加，因此默认关闭
+    @Test
+    void testAdaptiveTtl() {
+        int shops = 100000;
+        double totalQps = 2000;
+        double zipf = 1.0;
+        long windowSeconds = 10;
+        long bytesPerKey = 600;
+        long baseMillis = TimeUnit.MINUTES.toMillis(30);
+        //与application.yaml中的分级参数一致
+        AdaptiveTtlPolicy policy = new AdaptiveTtlPolicy(new HotKeyDetector(10, 100, 100, 1.0),
+                true, 100, 5, 4, 0.5, 120, 14400, 600);
+        //1.Zipf分布的归一化系数
+        double norm = 0;
+        for (int i = 1; i <= shops; i++) {
+            norm += 1 / Math.pow(i, zipf);
+        }
+        //2.逐个key计算固定有效期和自适应有效期下每秒命中次数和常驻比例
+        double[] hits = new double[2];
+        double[] resident = new double[2];
+        Map<String, Integer> tiers = new TreeMap<>();
+        for (int i = 1; i <= shops; i++) {
+            double qps = totalQps / Math.pow(i, zipf) / norm;
+            //HotKeyDetector的估算值已按采样率换算为窗口内的实际访问次数
+            String tier = policy.tier((long) (qps * windowSeconds), false);
+            tiers.merge(tier, 1, Integer::sum);
+            long[] ttls = {baseMillis, policy.ttlForTier(tier, baseMillis)};
+            for (int s = 0; s < ttls.length; s++) {
+                double ttl = ttls[s] / 1000.0;
+                hits[s] += qps * (qps * ttl / (qps * ttl + 1));
+                resident[s] += ttl / (ttl + 1 / qps);
+            }
+        }
+        log.info("有效期分级: {}", tiers);
+        String[] names = {"固定有效期", "自适应有效期"};
+        for (int s = 0; s < names.length; s++) {
+            log.info("{}: 命中率={}%, 回源QPS={}, 常驻key={}, 内存约{}MB", names[s],
+                    String.format("%.2f", hits[s] * 100 / totalQps), String.format("%.1f", totalQps - hits[s]),
+                    (long) resident[s], (long) resident[s] * bytesPerKey >> 20);
+        }
+        //3.自适应有效期节省内存，代价是命中率下降、回源QPS上升
+        assertTrue(tiers.get(AdaptiveTtlPolicy.COLD) > shops / 2);
+        assertTrue(resident[1] < resident[0]);
+        assertTrue(hits[1] < hits[0]);
+        assertTrue(totalQps - hits[1] > totalQps - hits[0]);
+    }
+
+    //用真实的HotKeyDetector驱动AdaptiveTtlPolicy，检查分级边界和有效期的上下限
+    @Test
+    void testAdaptiveTtlTiers() {
+        HotKeyDetector detector = new HotKeyDetector(10, 100, 100, 1.0);
+        AdaptiveTtlPolicy policy = new AdaptiveTtlPolicy(detector, true, 100, 5, 4, 0.5, 120, 14400, 600);
+        long halfHour = TimeUnit.MINUTES.toMillis(30);
+        //1.窗口内访问100次以上为热点，有效期x4，超过max-ttl时取max-ttl
+        for (int i = 0; i < 100; i++) {
+            detector.record("shop:hot");
+        }
+        assertEquals(AdaptiveTtlPolicy.HOT, policy.tier(detector.frequency("shop:hot"), false));
+        assertEquals(TimeUnit.MINUTES.toMillis(120), policy.ttl("shop:hot", halfHour));
+        assertEquals(TimeUnit.HOURS.toMillis(4), policy.ttl("shop:hot", TimeUnit.HOURS.toMillis(2)));
+        //2.近期更新过的热点key保持基础有效期
+        policy.onUpdate("shop:hot");
+        assertEquals(halfHour, policy.ttl("shop:hot", halfHour));
+        //3.窗口内访问少于5次为长尾，有效期x0.5，低于min-ttl时取min-ttl
+        detector.record("shop:cold");
+        assertEquals(AdaptiveTtlPolicy.COLD, policy.tier(detector.frequency("shop:cold"), false));
+        assertEquals(TimeUnit.MINUTES.toMillis(15), policy.ttl("shop:cold", halfHour));
+        assertEquals(TimeUnit.MINUTES.toMillis(2), policy.ttl("shop:cold", TimeUnit.MINUTES.toMillis(3)));
+        //4.基础有效期本身低于min-ttl时不会被延长
+        assertEquals(TimeUnit.MINUTES.toMillis(1), policy.ttl("shop:cold", TimeUnit.MINUTES.toMillis(1)));
+        //5.介于两者之间为普通key
+        for (int i = 0; i < 10; i++) {
+            detector.record("shop:warm");
+        }
+        assertEquals(halfHour, policy.ttl("shop:warm", halfHour));
+    }
+
+    //批量创建订单：同一用户的重复消息合并，库存不足k个时逐条扣减，重复投递的消息不会重复写入。事务在测试结束后回滚
+    @Test
+    @Transactional
+    void testCreatVoucherOrders() {
+        //1.准备一张库存为2的秒杀券
+        long voucherId = 990000001L;
+        SeckillVoucher seckillVoucher = new SeckillVoucher();
+        seckillVoucher.setVoucherId(voucherId);
+        seckillVoucher.setStock(2);
+        seckillVoucher.setBeginTime(LocalDateTime.now());
+        seckillVoucher.setEndTime(LocalDateTime.now().plusDays(1));
+        seckillVoucherService.save(seckillVoucher);
+        //2.3个用户4条消息，第一个用户的消息重复
+        long[] users = {990000001L, 990000002L, 990000003L, 990000001L};
+        List<VoucherOrder> orders = new ArrayList<>();
+        for (int i = 0; i < users.length; i++) {
+            VoucherOrder order = new VoucherOrder();
+            order.setId(voucherId * 10 + i);
+            order.setUserId(users[i]);
+            order.setVoucherId(voucherId);
+            orders.add(order);
+        }
+        //3.合并后3个订单，库存只有2个，stock >= 3不成立，逐条扣减后前两个用户下单成功，第三个用户的订单返回给调用方
+        List<VoucherOrder> rejected = voucherOrderService.creatVoucherOrders(orders);
+        assertEquals(1, rejected.size());
+        assertEquals(users[2], (long) rejected.get(0).getUserId());
+        assertEquals(2, countOrders(voucherId));
+        assertEquals(0, seckillVoucherService.getById(voucherId).getStock());
+        assertEquals(1, (int) voucherOrderService.query().eq("voucher_id", voucherId).eq("user_id", users[0]).count());
+        //4.补充库存后重复投递同一批消息，只写入之前没有写入的第三个用户，一次扣减1个库存
+        seckillVoucherService.update().set("stock", 5).eq("voucher_id", voucherId).update();
+        assertTrue(voucherOrderService.creatVoucherOrders(orders).isEmpty());
+        assertEquals(3, countOrders(voucherId));
+        assertEquals(4, seckillVoucherService.getById(voucherId).getStock());
+        //5.再次投递，所有用户都已下单，不写入也不扣库存
+        assertTrue(voucherOrderService.creatVoucherOrders(orders).isEmpty());
+        assertEquals(3, countOrders(voucherId));
+        assertEquals(4, seckillVoucherService.getById(voucherId).getStock());
+    }
+
+    private int countOrders(long voucherId) {
+        return voucherOrderService.query().eq("voucher_id", voucherId).count();
+    }
+
 //    @Test
 //    void testHyperLogLog() {
 //        String[] values = new String[1000];